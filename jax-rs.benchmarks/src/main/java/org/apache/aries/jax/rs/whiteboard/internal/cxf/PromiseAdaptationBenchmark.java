@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.apache.cxf.continuations.Continuation;
+import org.apache.cxf.continuations.ContinuationProvider;
+import org.apache.cxf.jaxrs.impl.AsyncResponseImpl;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.util.function.Function;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.PromiseFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures resuming a response from a resolved promise of the class space of
+ * the whiteboard and from one of another class space, which is adapted
+ * through method handles.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class PromiseAdaptationBenchmark {
+
+    @Benchmark
+    public AsyncResponseImpl foreignPromise() {
+        return _invoker.checkFutureResponse(asyncMessage(), _foreignPromise);
+    }
+
+    @Benchmark
+    public AsyncResponseImpl promise() {
+        return _invoker.checkFutureResponse(asyncMessage(), _promise);
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        _classLoader = new URLClassLoader(
+            new URL[]{
+                Promise.class.getProtectionDomain().getCodeSource().
+                    getLocation(),
+                Function.class.getProtectionDomain().getCodeSource().
+                    getLocation()},
+            null);
+
+        Class<?> promiseFactoryClass = _classLoader.loadClass(
+            PromiseFactory.class.getName());
+
+        Object promiseFactory = promiseFactoryClass.getConstructor(
+            Executor.class
+        ).newInstance(
+            promiseFactoryClass.getMethod("inlineExecutor").invoke(null));
+
+        _foreignPromise = promiseFactoryClass.getMethod(
+            "resolved", Object.class
+        ).invoke(promiseFactory, "value");
+
+        _promise = new PromiseFactory(
+            PromiseFactory.inlineExecutor()).resolved("value");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        _classLoader.close();
+    }
+
+    private static Message asyncMessage() {
+        Continuation continuation = (Continuation)Proxy.newProxyInstance(
+            PromiseAdaptationBenchmark.class.getClassLoader(),
+            new Class<?>[]{Continuation.class},
+            new InvocationHandler() {
+
+                @Override
+                public Object invoke(
+                    Object proxy, Method method, Object[] args) {
+
+                    switch (method.getName()) {
+                        case "getObject":
+                            return _object;
+                        case "setObject":
+                            _object = args[0];
+
+                            return null;
+                        default:
+                            return method.getReturnType() == boolean.class ?
+                                false : null;
+                    }
+                }
+
+                private Object _object;
+
+            });
+
+        ContinuationProvider continuationProvider =
+            (ContinuationProvider)Proxy.newProxyInstance(
+                PromiseAdaptationBenchmark.class.getClassLoader(),
+                new Class<?>[]{ContinuationProvider.class},
+                (proxy, method, args) -> continuation);
+
+        Message message = new MessageImpl();
+        Exchange exchange = new ExchangeImpl();
+
+        message.setExchange(exchange);
+        message.put(
+            ContinuationProvider.class.getName(), continuationProvider);
+
+        exchange.setInMessage(message);
+
+        return message;
+    }
+
+    private URLClassLoader _classLoader;
+    private Object _foreignPromise;
+    private final PromiseAwareJAXRSInvoker _invoker =
+        new PromiseAwareJAXRSInvoker();
+    private Promise<String> _promise;
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.apache.aries.component.dsl.CachingServiceReference;
+import org.apache.cxf.jaxrs.ext.ResourceComparator;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.message.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.ServiceReference;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ordering the root resources matching a request the way CXF does,
+ * comparing rank ordinals and, as the comparator did before them, the
+ * service properties of both references on every comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class ResourceComparatorBenchmark {
+
+    @Param("500")
+    public int candidates;
+
+    @Benchmark
+    public List<ClassResourceInfo> rankOrdinals() {
+        return sort(new ComparableResourceComparator());
+    }
+
+    @Benchmark
+    public List<ClassResourceInfo> serviceProperties() {
+        return sort(new PropertiesResourceComparator());
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+
+        List<SingletonServiceReferenceResourceProvider> providers =
+            new ArrayList<>();
+
+        for (int i = 0; i < candidates; i++) {
+            providers.add(provider(i + 1, random.nextInt(20)));
+        }
+
+        ComparableResourceComparator.assignRankOrdinals(providers);
+
+        _candidates = new ArrayList<>();
+
+        for (SingletonServiceReferenceResourceProvider provider : providers) {
+            ClassResourceInfo classResourceInfo = new ClassResourceInfo(
+                Object.class);
+
+            classResourceInfo.setResourceProvider(provider);
+
+            _candidates.add(classResourceInfo);
+        }
+
+        Collections.shuffle(_candidates, random);
+    }
+
+    private static int compare(
+        Map<String, Object> properties, ServiceReference<?> other) {
+
+        int ranking = ranking(properties.get("service.ranking"));
+        int otherRanking = ranking(other.getProperty("service.ranking"));
+
+        if (ranking != otherRanking) {
+            return Integer.compare(ranking, otherRanking);
+        }
+
+        return Long.compare(
+            (Long)other.getProperty("service.id"),
+            (Long)properties.get("service.id"));
+    }
+
+    private static SingletonServiceReferenceResourceProvider provider(
+        long serviceId, int serviceRanking) {
+
+        Map<String, Object> properties = new HashMap<>();
+
+        properties.put("service.id", serviceId);
+        properties.put("service.ranking", serviceRanking);
+
+        ServiceReference<?> serviceReference =
+            (ServiceReference<?>)Proxy.newProxyInstance(
+                ResourceComparatorBenchmark.class.getClassLoader(),
+                new Class<?>[]{ServiceReference.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "compareTo":
+                            return compare(
+                                properties, (ServiceReference<?>)args[0]);
+                        case "getProperty":
+                            return properties.get(args[0]);
+                        case "getPropertyKeys":
+                            return properties.keySet().toArray(new String[0]);
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return properties.toString();
+                    }
+                });
+
+        return new SingletonServiceReferenceResourceProvider(
+            new CachingServiceReference<>(serviceReference), new Object());
+    }
+
+    private static int ranking(Object serviceRanking) {
+        return serviceRanking instanceof Integer ? (Integer)serviceRanking : 0;
+    }
+
+    private List<ClassResourceInfo> sort(ResourceComparator comparator) {
+        List<ClassResourceInfo> sorted = new ArrayList<>(_candidates);
+
+        sorted.sort((cri1, cri2) -> comparator.compare(cri1, cri2, null));
+
+        return sorted;
+    }
+
+    private List<ClassResourceInfo> _candidates;
+
+    /**
+     * Orders candidates as the comparator did before rank ordinals.
+     */
+    private static class PropertiesResourceComparator
+        extends ComparableResourceComparator {
+
+        @Override
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        public int compare(
+            ClassResourceInfo cri1, ClassResourceInfo cri2,
+            Message message) {
+
+            CachingServiceReference ref1 =
+                ((ServiceReferenceResourceProvider)
+                    cri2.getResourceProvider()).getImmutableServiceReference();
+            CachingServiceReference ref2 =
+                ((ServiceReferenceResourceProvider)
+                    cri1.getResourceProvider()).getImmutableServiceReference();
+
+            Object serviceRanking1 = ref1.getProperty("service.ranking");
+            Object serviceRanking2 = ref2.getProperty("service.ranking");
+
+            if (Objects.equals(serviceRanking1, serviceRanking2)) {
+                return 0;
+            }
+
+            return ref1.compareTo(ref2);
+        }
+
+    }
+
+}
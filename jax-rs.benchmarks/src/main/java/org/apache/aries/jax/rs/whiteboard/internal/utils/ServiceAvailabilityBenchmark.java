@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.utils;
+
+import org.apache.aries.component.dsl.CachingServiceReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceObjects;
+import org.osgi.framework.ServiceReference;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures checking whether the last service registered by a bundle with a
+ * few hundred services is still registered, scanning the registered services
+ * of the bundle as it was done on every request and reading the flag of its
+ * tuple.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class ServiceAvailabilityBenchmark {
+
+    @Param("300")
+    public int services;
+
+    @Benchmark
+    public boolean registeredServices() {
+        return Utils.isAvailable(_serviceReference);
+    }
+
+    @Benchmark
+    public boolean serviceTuple() {
+        return _serviceTuple.isAvailable();
+    }
+
+    @Setup
+    public void setUp() {
+        Bundle bundle = (Bundle)Proxy.newProxyInstance(
+            ServiceAvailabilityBenchmark.class.getClassLoader(),
+            new Class<?>[]{Bundle.class},
+            (proxy, method, args) -> {
+                if (method.getName().equals("getRegisteredServices")) {
+                    return _registered.toArray(new ServiceReference<?>[0]);
+                }
+
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+        for (int i = 0; i < services; i++) {
+            _serviceReference = register(bundle);
+        }
+
+        _serviceTuple = serviceTuple(_serviceReference);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ServiceReference<Object> register(Bundle bundle) {
+        Map<String, Object> properties = new HashMap<>();
+
+        properties.put("service.id", (long)_registered.size() + 1);
+
+        ServiceReference<Object> serviceReference =
+            (ServiceReference<Object>)Proxy.newProxyInstance(
+                ServiceAvailabilityBenchmark.class.getClassLoader(),
+                new Class<?>[]{ServiceReference.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getBundle":
+                            return bundle;
+                        case "getProperty":
+                            return properties.get(args[0]);
+                        case "getPropertyKeys":
+                            return properties.keySet().toArray(new String[0]);
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return properties.toString();
+                        default:
+                            throw new UnsupportedOperationException(
+                                method.getName());
+                    }
+                });
+
+        _registered.add(serviceReference);
+
+        return serviceReference;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServiceTuple<Object> serviceTuple(
+        ServiceReference<Object> serviceReference) {
+
+        ServiceObjects<Object> serviceObjects =
+            (ServiceObjects<Object>)Proxy.newProxyInstance(
+                ServiceAvailabilityBenchmark.class.getClassLoader(),
+                new Class<?>[]{ServiceObjects.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getServiceReference")) {
+                        return serviceReference;
+                    }
+
+                    throw new UnsupportedOperationException(method.getName());
+                });
+
+        ServiceTuple<Object> serviceTuple = new ServiceTuple<>(
+            new CachingServiceReference<>(serviceReference), serviceObjects,
+            new Object());
+
+        serviceTuple.updateAvailability();
+
+        return serviceTuple;
+    }
+
+    private final List<ServiceReference<?>> _registered = new ArrayList<>();
+    private ServiceReference<Object> _serviceReference;
+    private ServiceTuple<Object> _serviceTuple;
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard;
+
+import java.util.Map;
+
+import org.osgi.dto.DTO;
+
+public class ApplicationMetricsDTO extends DTO {
+
+    /**
+     * The counters of the application, by name.
+     */
+    public Map<String, Long> counters;
+
+    /**
+     * The current values of the gauges of the application, by name.
+     */
+    public Map<String, Long> gauges;
+
+    /**
+     * The name of the application.
+     */
+    public String name;
+
+    /**
+     * The timings of the application, one per operation.
+     */
+    public TimingDTO[] timings;
+
+    /**
+     * The number of rebuilds caused by each kind of change.
+     */
+    public Map<String, Long> triggers;
+
+}
@@ -19,6 +19,18 @@ package org.apache.aries.jax.rs.whiteboard;
 
 public class AriesJaxrsWhiteboardConstants {
 
+    /**
+     * The request property holding an {@code org.osgi.util.promise.Promise}
+     * that resolves when the response of the request completes, times out
+     * or its client disconnects before the promise or the completion stage
+     * returned by its resource method is done. Resource methods that return
+     * a promise can read it from the CXF {@code MessageContext} to stop the
+     * work nobody waits for anymore, for instance by failing the {@code
+     * Deferred} of the promise.
+     */
+    public static final String CANCELLATION =
+        "org.apache.aries.jax.rs.whiteboard.cancellation";
+
     /**
      * This application is waiting for a ServletContextHelper
      */
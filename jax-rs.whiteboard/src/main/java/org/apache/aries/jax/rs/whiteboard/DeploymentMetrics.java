@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard;
+
+/**
+ * Timings of the rebuilds of the applications of a JAX-RS Whiteboard, and
+ * counters of the work they do serving requests. It is
+ * registered next to the {@code JaxrsServiceRuntime} of the whiteboard and
+ * keeps the timings for the lifetime of the whiteboard. Another instance,
+ * registered with the {@link #CLIENT_EXECUTOR} property, reports the tasks of
+ * the executor shared by clients as the {@code client} application.
+ */
+public interface DeploymentMetrics {
+
+    /**
+     * The service property, set to {@code true}, of the executor shared by
+     * the clients built from the {@code ClientBuilder} service and of the
+     * metrics of its tasks.
+     */
+    String CLIENT_EXECUTOR =
+        "org.apache.aries.jax.rs.whiteboard.client.executor";
+
+    /**
+     * Creating and initializing the CXF bus of an application.
+     */
+    String CREATE_BUS = "createBus";
+
+    /**
+     * Building the CXF endpoint of an application.
+     */
+    String CREATE_ENDPOINT = "createEndpoint";
+
+    /**
+     * Changes to an application absorbed by the rebuilds deferred for
+     * {@code rewire.quiet.period}. Divided by {@link
+     * #COUNTER_DEBOUNCED_REWIRES} it tells how many changes a deferred
+     * rebuild absorbs on average.
+     */
+    String COUNTER_DEBOUNCED_CHANGES = "debouncedChanges";
+
+    /**
+     * Rebuilds of an application deferred for {@code rewire.quiet.period}.
+     */
+    String COUNTER_DEBOUNCED_REWIRES = "debouncedRewires";
+
+    /**
+     * Message body reader or writer selections answered from the cache of an
+     * application.
+     */
+    String COUNTER_PROVIDER_CACHE_HIT = "providerCacheHit";
+
+    /**
+     * Message body reader or writer selections that had to ask the
+     * extensions of an application.
+     */
+    String COUNTER_PROVIDER_CACHE_MISS = "providerCacheMiss";
+
+    /**
+     * Requests of an application rejected because its concurrency limit and
+     * its queue were full, or because they waited too long in the queue.
+     */
+    String COUNTER_REJECTED_REQUESTS = "rejectedRequests";
+
+    /**
+     * Publisher responses of an application rejected because it was streaming
+     * as many as {@code publisher.max.streams}.
+     */
+    String COUNTER_REJECTED_STREAMS = "rejectedStreams";
+
+    /**
+     * Client tasks rejected because every thread of the client executor was
+     * busy and its queue was full.
+     */
+    String COUNTER_REJECTED_TASKS = "rejectedTasks";
+
+    /**
+     * Requests of an application shed because the whiteboard was serving as
+     * many requests as it currently admits.
+     */
+    String COUNTER_SHED_REQUESTS = "shedRequests";
+
+    /**
+     * Publisher responses an application is streaming.
+     */
+    String GAUGE_ACTIVE_STREAMS = "activeStreams";
+
+    /**
+     * Client tasks running on the client executor.
+     */
+    String GAUGE_ACTIVE_TASKS = "activeTasks";
+
+    /**
+     * Requests an application is serving.
+     */
+    String GAUGE_IN_FLIGHT_REQUESTS = "inFlightRequests";
+
+    /**
+     * Requests waiting for the concurrency limit of an application.
+     */
+    String GAUGE_QUEUED_REQUESTS = "queuedRequests";
+
+    /**
+     * Client tasks waiting for a thread of the client executor.
+     */
+    String GAUGE_QUEUED_TASKS = "queuedTasks";
+
+    /**
+     * Introspecting the resource methods of an application for its DTO.
+     */
+    String INTROSPECTION = "introspection";
+
+    /**
+     * A whole rebuild of an application.
+     */
+    String REWIRE = "rewire";
+
+    /**
+     * A client task, from its submission to the client executor until it
+     * completes.
+     */
+    String TASK = "task";
+
+    String TRIGGER_APPLICATION = "application";
+
+    String TRIGGER_EXTENSION = "extension";
+
+    String TRIGGER_REQUEST = "request";
+
+    String TRIGGER_RESOURCE = "resource";
+
+    ApplicationMetricsDTO[] getApplicationMetricsDTOs();
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard;
+
+import org.osgi.service.jaxrs.runtime.dto.ResourceDTO;
+
+/**
+ * A {@link ResourceDTO} for a prototype resource whose instances are pooled.
+ */
+public class PooledResourceDTO extends ResourceDTO {
+
+    /**
+     * The number of instances created for the pool.
+     */
+    public long createdInstances;
+
+    /**
+     * The number of instances released for staying idle longer than the
+     * idle timeout.
+     */
+    public long evictedInstances;
+
+    /**
+     * The number of idle instances in the pool.
+     */
+    public int idleInstances;
+
+    /**
+     * The number of instances leased to requests in progress.
+     */
+    public int leasedInstances;
+
+    /**
+     * The number of leases served, from the pool or from new instances.
+     */
+    public long leases;
+
+    /**
+     * The maximum number of idle instances the pool keeps.
+     */
+    public int poolSize;
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard;
+
+import org.osgi.dto.DTO;
+
+public class TimingDTO extends DTO {
+
+    /**
+     * The number of samples.
+     */
+    public long count;
+
+    /**
+     * The number of samples in each bucket. A sample falls in the first
+     * bucket whose upper bound it does not exceed; the last bucket holds the
+     * samples above every bound.
+     */
+    public long[] histogram;
+
+    /**
+     * The upper bounds of the buckets of the histogram, in milliseconds.
+     */
+    public long[] histogramBounds;
+
+    /**
+     * The longest sample, in milliseconds.
+     */
+    public double max;
+
+    /**
+     * The timed operation.
+     */
+    public String operation;
+
+    /**
+     * The sum of the samples, in milliseconds.
+     */
+    public double total;
+
+}
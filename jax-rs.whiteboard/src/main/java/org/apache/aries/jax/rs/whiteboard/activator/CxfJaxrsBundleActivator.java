@@ -24,13 +24,18 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.ext.RuntimeDelegate;
 import javax.ws.rs.sse.SseEventSource;
 
+import org.apache.aries.jax.rs.whiteboard.DeploymentMetrics;
+import org.apache.aries.jax.rs.whiteboard.internal.DeploymentMetricsImpl;
 import org.apache.aries.jax.rs.whiteboard.internal.client.ClientBuilderFactory;
+import org.apache.aries.jax.rs.whiteboard.internal.client.ClientExecutor;
+import org.apache.aries.jax.rs.whiteboard.internal.client.SharedExecutorService;
 import org.apache.aries.jax.rs.whiteboard.internal.utils.PropertyHolder;
 import org.apache.aries.component.dsl.OSGi;
 import org.apache.aries.component.dsl.OSGiResult;
@@ -51,11 +56,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static java.lang.String.format;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.CLIENT_EXECUTOR;
 import static org.apache.aries.component.dsl.OSGi.coalesce;
 import static org.apache.aries.component.dsl.OSGi.configuration;
 import static org.apache.aries.jax.rs.whiteboard.internal.utils.LogUtils.ifInfoEnabled;
 import static org.apache.aries.jax.rs.whiteboard.internal.utils.LogUtils.debugTracking;
 import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.canonicalize;
+import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.getBoolean;
+import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.getLong;
 import static org.apache.aries.jax.rs.whiteboard.internal.Whiteboard.createWhiteboard;
 import static org.apache.aries.component.dsl.OSGi.all;
 import static org.apache.aries.component.dsl.OSGi.bundles;
@@ -75,6 +83,10 @@ public class CxfJaxrsBundleActivator implements BundleActivator {
 
     public static final List<Class<?>> INTERNALLY_REQUIRED_CLASSES; 
 
+    private static final long _DEFAULT_CLIENT_EXECUTOR_QUEUE_SIZE = 1000;
+
+    private static final long _DEFAULT_CLIENT_EXECUTOR_THREADS = 20;
+
     private static final Logger _log = LoggerFactory.getLogger(
         CxfJaxrsBundleActivator.class);
 
@@ -192,14 +204,73 @@ public class CxfJaxrsBundleActivator implements BundleActivator {
     					);
     }
     
+    /**
+     * The client executor outlives configuration updates, which resize it,
+     * so the clients already built keep a working executor. Other bundles
+     * get it as a {@link SharedExecutorService} they cannot shut down.
+     */
     private static OSGi<?> registerClient() {
-        return register(
-            ClientBuilder.class, new ClientBuilderFactory(),
-            (Map<String, Object>) null).
-            effects(
-                ifInfoEnabled(_log, () -> "Registered ClientBuilder"),
-                ifInfoEnabled(_log, () -> "Unregistered ClientBuilder")
-            );
+        return just(
+            new DeploymentMetricsImpl()
+        ).flatMap(deploymentMetrics ->
+            just(
+                () -> new ClientExecutor(
+                    (int)_DEFAULT_CLIENT_EXECUTOR_THREADS,
+                    (int)_DEFAULT_CLIENT_EXECUTOR_QUEUE_SIZE, false,
+                    deploymentMetrics)
+            ).effects(
+                __ -> {},
+                ClientExecutor::shutdown
+            ).flatMap(clientExecutor -> {
+                ExecutorService executorService = new SharedExecutorService(
+                    clientExecutor);
+
+                return all(
+                    ignore(
+                        coalesce(
+                            configuration(
+                                "org.apache.aries.jax.rs.whiteboard.client"),
+                            just(() -> new Hashtable<>())
+                        ).effects(
+                            configuration -> configureClientExecutor(
+                                clientExecutor, configuration),
+                            __ -> {}
+                        )),
+                    ignore(
+                        register(
+                            ExecutorService.class, executorService,
+                            Collections.singletonMap(CLIENT_EXECUTOR, true))),
+                    ignore(
+                        register(
+                            DeploymentMetrics.class, deploymentMetrics,
+                            Collections.singletonMap(CLIENT_EXECUTOR, true))),
+                    ignore(
+                        register(
+                            ClientBuilder.class,
+                            new ClientBuilderFactory(executorService),
+                            (Map<String, Object>) null).
+                        effects(
+                            ifInfoEnabled(
+                                _log, () -> "Registered ClientBuilder"),
+                            ifInfoEnabled(
+                                _log, () -> "Unregistered ClientBuilder")
+                        ))
+                );
+            })
+        );
+    }
+
+    private static void configureClientExecutor(
+        ClientExecutor clientExecutor, Dictionary<String, ?> configuration) {
+
+        clientExecutor.configure(
+            (int)getLong(
+                configuration.get("executor.threads"),
+                _DEFAULT_CLIENT_EXECUTOR_THREADS),
+            (int)getLong(
+                configuration.get("executor.queue.size"),
+                _DEFAULT_CLIENT_EXECUTOR_QUEUE_SIZE),
+            getBoolean(configuration.get("executor.virtual"), false));
     }
 
     private static OSGi<?> registerSseEventSourceFactory() {
@@ -18,12 +18,16 @@
 package org.apache.aries.jax.rs.whiteboard.cxf.jaxrs.client;
 
 import javax.ws.rs.HttpMethod;
+import javax.ws.rs.client.AsyncInvoker;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.SyncInvoker;
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.Response;
 
+import org.apache.cxf.jaxrs.utils.ExceptionUtils;
 import org.osgi.service.jaxrs.client.PromiseRxInvoker;
+import org.osgi.util.promise.Deferred;
 import org.osgi.util.promise.Promise;
 import org.osgi.util.promise.PromiseFactory;
 
@@ -31,7 +35,19 @@ class PromiseRxInvokerImpl implements PromiseRxInvoker {
 
     public PromiseRxInvokerImpl(
         SyncInvoker syncInvoker, PromiseFactory promiseFactory) {
+        this(syncInvoker, null, promiseFactory);
+    }
+
+    /**
+     * Requests go through {@code asyncInvoker}, when not null, so promises
+     * resolve when the response arrives instead of holding a thread of the
+     * promise factory for the whole request.
+     */
+    public PromiseRxInvokerImpl(
+        SyncInvoker syncInvoker, AsyncInvoker asyncInvoker,
+        PromiseFactory promiseFactory) {
         _syncInvoker = syncInvoker;
+        _asyncInvoker = asyncInvoker;
         _promiseFactory = promiseFactory;
     }
 
@@ -72,17 +88,29 @@ class PromiseRxInvokerImpl implements PromiseRxInvoker {
 
     @Override
     public <R> Promise<R> method(String s, Class<R> responseType) {
+        if (_asyncInvoker != null) {
+            return invoke(s, null, new GenericType<>(responseType));
+        }
+
     	return _promiseFactory.submit(() -> _syncInvoker.method(s, responseType));
     }
 
     @Override
     public <R> Promise<R> method(String s, Entity<?> entity, Class<R> responseType) {
+        if (_asyncInvoker != null) {
+            return invoke(s, entity, new GenericType<>(responseType));
+        }
+
     	return _promiseFactory.submit(() -> _syncInvoker.method(s, entity, responseType));
     }
 
     @Override
     public <R> Promise<R> method(
         String s, Entity<?> entity, GenericType<R> genericType) {
+        if (_asyncInvoker != null) {
+            return invoke(s, entity, genericType);
+        }
+
     	return _promiseFactory.submit(() -> _syncInvoker.method(s, entity, genericType));
     }
 
@@ -93,6 +121,10 @@ class PromiseRxInvokerImpl implements PromiseRxInvoker {
 
     @Override
     public <R> Promise<R> method(String s, GenericType<R> genericType) {
+        if (_asyncInvoker != null) {
+            return invoke(s, null, genericType);
+        }
+
     	return _promiseFactory.submit(() -> _syncInvoker.method(s, genericType));
     }
 
@@ -161,6 +193,72 @@ class PromiseRxInvokerImpl implements PromiseRxInvoker {
         return method("TRACE", genericType);
     }
 
+    private <R> Promise<R> invoke(
+        String s, Entity<?> entity, GenericType<R> genericType) {
+
+        Deferred<R> deferred = _promiseFactory.deferred();
+
+        try {
+            _asyncInvoker.method(
+                s, entity, new ResponseCallback<>(deferred, genericType));
+        }
+        catch (Throwable t) {
+            deferred.fail(t);
+        }
+
+        return deferred.getPromise();
+    }
+
+    private final AsyncInvoker _asyncInvoker;
     private final PromiseFactory _promiseFactory;
     private final SyncInvoker _syncInvoker;
+
+    /**
+     * The response type of a callback is taken from its class, so responses
+     * are always received as {@link Response} and their entity read the way
+     * the {@link SyncInvoker} reads it.
+     */
+    static class ResponseCallback<R> implements InvocationCallback<Response> {
+
+        ResponseCallback(Deferred<R> deferred, GenericType<R> genericType) {
+            _deferred = deferred;
+            _genericType = genericType;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void completed(Response response) {
+            try {
+                if (_genericType.getRawType() == Response.class) {
+                    _deferred.resolve((R)response);
+
+                    return;
+                }
+
+                if (response.getStatus() >= 300) {
+                    _deferred.fail(
+                        ExceptionUtils.toWebApplicationException(response));
+
+                    return;
+                }
+
+                _deferred.resolve(
+                    response.hasEntity() ?
+                        response.readEntity(_genericType) : null);
+            }
+            catch (Throwable t) {
+                _deferred.fail(t);
+            }
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            _deferred.fail(throwable);
+        }
+
+        private final Deferred<R> _deferred;
+        private final GenericType<R> _genericType;
+
+    }
+
 }
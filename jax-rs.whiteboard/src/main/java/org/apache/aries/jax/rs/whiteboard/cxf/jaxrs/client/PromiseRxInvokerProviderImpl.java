@@ -19,9 +19,11 @@ package org.apache.aries.jax.rs.whiteboard.cxf.jaxrs.client;
 
 import java.util.concurrent.ExecutorService;
 
+import javax.ws.rs.client.AsyncInvoker;
 import javax.ws.rs.client.RxInvokerProvider;
 import javax.ws.rs.client.SyncInvoker;
 
+import org.apache.cxf.jaxrs.client.SyncInvokerImpl;
 import org.osgi.service.jaxrs.client.PromiseRxInvoker;
 import org.osgi.util.promise.PromiseFactory;
 
@@ -47,7 +49,15 @@ public class PromiseRxInvokerProviderImpl
                 PromiseFactory.inlineExecutor());
         }
 
-        return new PromiseRxInvokerImpl(syncInvoker, promiseFactory);
+        AsyncInvoker asyncInvoker = null;
+
+        if (syncInvoker instanceof SyncInvokerImpl) {
+            asyncInvoker =
+                ((SyncInvokerImpl)syncInvoker).getWebClient().async();
+        }
+
+        return new PromiseRxInvokerImpl(
+            syncInvoker, asyncInvoker, promiseFactory);
     }
 
 }
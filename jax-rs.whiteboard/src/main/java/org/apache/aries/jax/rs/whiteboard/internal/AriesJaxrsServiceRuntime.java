@@ -43,8 +43,11 @@ import javax.ws.rs.core.Application;
 import javax.ws.rs.core.MediaType;
 
 import org.apache.aries.jax.rs.whiteboard.AriesJaxrsWhiteboardConstants;
+import org.apache.aries.jax.rs.whiteboard.PooledResourceDTO;
 import org.apache.aries.jax.rs.whiteboard.internal.cxf.CxfJaxrsServiceRegistrator;
+import org.apache.aries.jax.rs.whiteboard.internal.cxf.PrototypeInstancePool;
 import org.apache.aries.jax.rs.whiteboard.internal.utils.PropertyHolder;
+import org.apache.aries.jax.rs.whiteboard.DeploymentMetrics;
 import org.apache.aries.jax.rs.whiteboard.internal.introspection.ClassIntrospector;
 import org.apache.aries.component.dsl.CachingServiceReference;
 import org.apache.aries.jax.rs.whiteboard.internal.utils.Utils;
@@ -104,13 +107,13 @@ public class AriesJaxrsServiceRuntime implements JaxrsServiceRuntime {
     public void addApplicationEndpoint(
         PropertyHolder registratorReference,
         CachingServiceReference<?> endpointImmutableServiceReference,
-        Bus bus, Class<?> theClass) {
+        Bus bus, Class<?> theClass, PrototypeInstancePool pool) {
 
         _applicationEndpoints.compute(
             getServiceName(registratorReference),
             merger(
                 new EndpointRuntimeInformation(
-                    endpointImmutableServiceReference, bus, theClass)));
+                    endpointImmutableServiceReference, bus, theClass, pool)));
 
         if (_log.isDebugEnabled()) {
             _log.debug(
@@ -496,7 +499,7 @@ public class AriesJaxrsServiceRuntime implements JaxrsServiceRuntime {
             getServiceName(registratorProperties),
             remover(
                 new EndpointRuntimeInformation(
-                cachingServiceReference, null, null)));
+                cachingServiceReference, null, null, null)));
 
         if (_log.isDebugEnabled()) {
             _log.debug(
@@ -931,6 +934,8 @@ public class AriesJaxrsServiceRuntime implements JaxrsServiceRuntime {
         return _applications.values().stream().
             filter(p -> !(".default".equals(
                 p._cachingServiceReference.getProperty(JAX_RS_NAME)))).
+            filter(p -> !p._cxfJaxRsServiceRegistrator.getDeployment().
+                isCompletedExceptionally()).
             map(
                 this::buildApplicationDTO
             );
@@ -966,6 +971,8 @@ public class AriesJaxrsServiceRuntime implements JaxrsServiceRuntime {
         applicationDTO.serviceId =
             (Long)ari._cachingServiceReference.getProperty("service.id");
 
+        long start = System.nanoTime();
+
         applicationDTO.resourceDTOs = getApplicationEndpointsStream(
             applicationDTO.name).toArray(
                 ResourceDTO[]::new
@@ -1047,6 +1054,10 @@ public class AriesJaxrsServiceRuntime implements JaxrsServiceRuntime {
         applicationDTO.resourceMethods = resourceMethodInfoDTOS.toArray(
             new ResourceMethodInfoDTO[0]);
 
+        _whiteboard.getDeploymentMetrics().record(
+            applicationDTO.name, DeploymentMetrics.INTROSPECTION,
+            System.nanoTime() - start);
+
         return applicationDTO;
     }
 
@@ -1146,7 +1157,11 @@ public class AriesJaxrsServiceRuntime implements JaxrsServiceRuntime {
                 Stream.empty();
 
         return applicationEndpointStream.map(
-            sr -> populateResourceDTO(new ResourceDTO(), sr)
+            sr -> populateResourceDTO(
+                sr._pool == null ?
+                    new ResourceDTO() :
+                    sr._pool.populateDTO(new PooledResourceDTO()),
+                sr)
         );
     }
 
@@ -1220,11 +1235,12 @@ public class AriesJaxrsServiceRuntime implements JaxrsServiceRuntime {
 
         public EndpointRuntimeInformation(
             CachingServiceReference<?> cachingServiceReference, Bus bus,
-            Class<?> aClass) {
+            Class<?> aClass, PrototypeInstancePool pool) {
 
             _cachingServiceReference = cachingServiceReference;
             _bus = bus;
             _class = aClass;
+            _pool = pool;
         }
 
         @Override
@@ -1246,6 +1262,7 @@ public class AriesJaxrsServiceRuntime implements JaxrsServiceRuntime {
         Bus _bus;
         CachingServiceReference<?> _cachingServiceReference;
         Class<?> _class;
+        PrototypeInstancePool _pool;
 
     }
 
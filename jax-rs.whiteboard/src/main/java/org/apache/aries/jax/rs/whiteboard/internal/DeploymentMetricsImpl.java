@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.apache.aries.jax.rs.whiteboard.ApplicationMetricsDTO;
+import org.apache.aries.jax.rs.whiteboard.DeploymentMetrics;
+import org.apache.aries.jax.rs.whiteboard.TimingDTO;
+
+public class DeploymentMetricsImpl implements DeploymentMetrics {
+
+    public DeploymentMetricsImpl() {
+        this(() -> {});
+    }
+
+    /**
+     * @param onRewire run after every rebuild is recorded
+     */
+    public DeploymentMetricsImpl(Runnable onRewire) {
+        _onRewire = onRewire;
+    }
+
+    @Override
+    public ApplicationMetricsDTO[] getApplicationMetricsDTOs() {
+        return _applicationMetrics.entrySet().stream().map(
+            entry -> entry.getValue().toDTO(entry.getKey())
+        ).toArray(
+            ApplicationMetricsDTO[]::new
+        );
+    }
+
+    /**
+     * Returns the counter of {@code application} named {@code counter}, for
+     * callers to increment directly.
+     */
+    public LongAdder getCounter(String application, String counter) {
+        return getApplicationMetrics(application).getCounter(counter);
+    }
+
+    /**
+     * Starts reporting the metrics of {@code application}. They are dropped
+     * once every party that added the application has removed it.
+     */
+    public void addApplication(String application) {
+        _applicationMetrics.compute(
+            application,
+            (__, applicationMetrics) -> {
+                if (applicationMetrics == null) {
+                    applicationMetrics = new ApplicationMetrics();
+                }
+
+                applicationMetrics._references++;
+
+                return applicationMetrics;
+            });
+    }
+
+    /**
+     * Reports the value of {@code supplier} as the gauge of {@code
+     * application} named {@code gauge}.
+     */
+    public void addGauge(
+        String application, String gauge, LongSupplier supplier) {
+
+        getApplicationMetrics(application)._gauges.put(gauge, supplier);
+    }
+
+    public long getRewireCount() {
+        return _rewireCount.get();
+    }
+
+    public long getRewireTime() {
+        return TimeUnit.NANOSECONDS.toMillis(_rewireNanos.get());
+    }
+
+    public void record(String application, String operation, long nanos) {
+        getApplicationMetrics(application).record(operation, nanos);
+
+        if (REWIRE.equals(operation)) {
+            _rewireCount.incrementAndGet();
+            _rewireNanos.addAndGet(nanos);
+
+            _onRewire.run();
+        }
+    }
+
+    public void recordTrigger(String application, String trigger) {
+        getApplicationMetrics(application).recordTrigger(trigger);
+    }
+
+    public void removeApplication(String application) {
+        _applicationMetrics.computeIfPresent(
+            application,
+            (__, applicationMetrics) ->
+                --applicationMetrics._references > 0 ?
+                    applicationMetrics : null);
+    }
+
+    /**
+     * Stops reporting the gauge of {@code application} named {@code gauge},
+     * unless another supplier has replaced {@code supplier} since.
+     */
+    public void removeGauge(
+        String application, String gauge, LongSupplier supplier) {
+
+        getApplicationMetrics(application)._gauges.remove(gauge, supplier);
+    }
+
+    static final long[] HISTOGRAM_BOUNDS =
+        {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    private ApplicationMetrics getApplicationMetrics(String application) {
+        return _applicationMetrics.computeIfAbsent(
+            application, __ -> new ApplicationMetrics());
+    }
+
+    private final Map<String, ApplicationMetrics> _applicationMetrics =
+        new ConcurrentHashMap<>();
+    private final Runnable _onRewire;
+    private final AtomicLong _rewireCount = new AtomicLong();
+    private final AtomicLong _rewireNanos = new AtomicLong();
+
+    private static class ApplicationMetrics {
+
+        LongAdder getCounter(String counter) {
+            return _counters.computeIfAbsent(counter, __ -> new LongAdder());
+        }
+
+        synchronized void record(String operation, long nanos) {
+            _timings.computeIfAbsent(operation, __ -> new Timing()).record(
+                nanos);
+        }
+
+        synchronized void recordTrigger(String trigger) {
+            _triggers.merge(trigger, 1L, Long::sum);
+        }
+
+        synchronized ApplicationMetricsDTO toDTO(String name) {
+            ApplicationMetricsDTO applicationMetricsDTO =
+                new ApplicationMetricsDTO();
+
+            applicationMetricsDTO.counters = new TreeMap<>();
+
+            _counters.forEach(
+                (counter, value) -> applicationMetricsDTO.counters.put(
+                    counter, value.sum()));
+
+            applicationMetricsDTO.gauges = new TreeMap<>();
+
+            _gauges.forEach(
+                (gauge, supplier) -> applicationMetricsDTO.gauges.put(
+                    gauge, supplier.getAsLong()));
+
+            applicationMetricsDTO.name = name;
+            applicationMetricsDTO.timings = _timings.entrySet().stream().map(
+                entry -> entry.getValue().toDTO(entry.getKey())
+            ).toArray(
+                TimingDTO[]::new
+            );
+            applicationMetricsDTO.triggers = new HashMap<>(_triggers);
+
+            return applicationMetricsDTO;
+        }
+
+        private final Map<String, LongAdder> _counters =
+            new ConcurrentHashMap<>();
+        private final Map<String, LongSupplier> _gauges =
+            new ConcurrentHashMap<>();
+        private int _references;
+        private final Map<String, Timing> _timings = new TreeMap<>();
+        private final Map<String, Long> _triggers = new TreeMap<>();
+
+    }
+
+    private static class Timing {
+
+        void record(long nanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+
+            int bucket = Arrays.binarySearch(HISTOGRAM_BOUNDS, millis);
+
+            if (bucket < 0) {
+                bucket = -bucket - 1;
+            }
+
+            _histogram[bucket]++;
+            _count++;
+            _max = Math.max(_max, nanos);
+            _total += nanos;
+        }
+
+        TimingDTO toDTO(String operation) {
+            TimingDTO timingDTO = new TimingDTO();
+
+            timingDTO.count = _count;
+            timingDTO.histogram = _histogram.clone();
+            timingDTO.histogramBounds = HISTOGRAM_BOUNDS.clone();
+            timingDTO.max = _max / 1e6;
+            timingDTO.operation = operation;
+            timingDTO.total = _total / 1e6;
+
+            return timingDTO;
+        }
+
+        private long _count;
+        private final long[] _histogram = new long[HISTOGRAM_BOUNDS.length + 1];
+        private long _max;
+        private long _total;
+
+    }
+
+}
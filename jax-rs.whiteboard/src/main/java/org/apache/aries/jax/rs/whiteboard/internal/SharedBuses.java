@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.cxf.Bus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reference counted buses, shared by the applications that ask for the same
+ * key. A bus is shut down when the last application releases it, and then
+ * runs the releases registered while it was created.
+ */
+public class SharedBuses {
+
+    public synchronized Bus acquire(
+        Object key, Function<List<Runnable>, Bus> busFactory) {
+
+        SharedBus sharedBus = _sharedBuses.get(key);
+
+        if (sharedBus == null) {
+            List<Runnable> releases = new ArrayList<>();
+
+            sharedBus = new SharedBus(
+                key, busFactory.apply(releases), releases);
+
+            _sharedBuses.put(key, sharedBus);
+            _keys.put(sharedBus._bus, sharedBus);
+
+            if (_log.isDebugEnabled()) {
+                _log.debug("Created shared CXF Bus for {}", key);
+            }
+        }
+
+        sharedBus._references++;
+
+        return sharedBus._bus;
+    }
+
+    public void release(Bus bus) {
+        SharedBus sharedBus;
+
+        synchronized (this) {
+            sharedBus = _keys.get(bus);
+
+            if (sharedBus == null || --sharedBus._references > 0) {
+                return;
+            }
+
+            _keys.remove(bus);
+            _sharedBuses.remove(sharedBus._key);
+        }
+
+        try {
+            bus.shutdown(false);
+        }
+        finally {
+            for (Runnable release : sharedBus._releases) {
+                try {
+                    release.run();
+                }
+                catch (Exception e) {
+                    if (_log.isWarnEnabled()) {
+                        _log.warn("Could not release CXF Bus extension", e);
+                    }
+                }
+            }
+        }
+
+        if (_log.isDebugEnabled()) {
+            _log.debug("Shut down shared CXF Bus for {}", sharedBus._key);
+        }
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(
+        SharedBuses.class);
+
+    private final Map<Bus, SharedBus> _keys = new IdentityHashMap<>();
+    private final Map<Object, SharedBus> _sharedBuses = new HashMap<>();
+
+    private static class SharedBus {
+
+        SharedBus(Object key, Bus bus, List<Runnable> releases) {
+            _key = key;
+            _bus = bus;
+            _releases = releases;
+        }
+
+        private final Bus _bus;
+        private final Object _key;
+        private int _references;
+        private final List<Runnable> _releases;
+
+    }
+
+}
@@ -17,7 +17,11 @@
 
 package org.apache.aries.jax.rs.whiteboard.internal;
 
+import org.apache.aries.jax.rs.whiteboard.DeploymentMetrics;
+import org.apache.aries.jax.rs.whiteboard.internal.cxf.AdmissionLimiter;
 import org.apache.aries.jax.rs.whiteboard.internal.cxf.CxfJaxrsServiceRegistrator;
+import org.apache.aries.jax.rs.whiteboard.internal.cxf.CxfJaxrsServlet;
+import org.apache.aries.jax.rs.whiteboard.internal.cxf.PrototypeInstancePool;
 import org.apache.aries.jax.rs.whiteboard.internal.cxf.PrototypeServiceReferenceResourceProvider;
 import org.apache.aries.jax.rs.whiteboard.internal.cxf.SingletonServiceReferenceResourceProvider;
 import org.apache.aries.jax.rs.whiteboard.internal.utils.Utils;
@@ -29,7 +33,6 @@ import org.apache.aries.component.dsl.OSGiResult;
 import org.apache.cxf.Bus;
 import org.apache.cxf.bus.extension.ExtensionManagerBus;
 import org.apache.cxf.jaxrs.lifecycle.ResourceProvider;
-import org.apache.cxf.transport.servlet.CXFNonSpringServlet;
 import org.osgi.framework.*;
 import org.osgi.framework.wiring.BundleWiring;
 import org.osgi.service.http.context.ServletContextHelper;
@@ -51,6 +54,15 @@ import javax.ws.rs.ext.ParamConverterProvider;
 import javax.ws.rs.ext.ReaderInterceptor;
 import javax.ws.rs.ext.WriterInterceptor;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
@@ -66,10 +78,14 @@ import static org.apache.aries.jax.rs.whiteboard.internal.utils.LogUtils.ifError
 import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.canonicalize;
 import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.canonicalizeAddress;
 import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.getApplicationProperties;
+import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.getBoolean;
+import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.getLong;
+import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.getSetting;
 import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.getString;
 import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.highestPer;
 import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.mergePropertyMaps;
 import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.onlyGettables;
+import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.updateProperties;
 import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.updateProperty;
 import static org.apache.aries.component.dsl.OSGi.NOOP;
 import static org.apache.aries.component.dsl.OSGi.all;
@@ -126,8 +142,37 @@ public class Whiteboard {
 
     static final String DEFAULT_NAME = ".default";
 
+    static final String PROTOTYPE_POOL_IDLE_TIMEOUT =
+        "prototype.pool.idle.timeout";
+
+    static final String PROTOTYPE_POOL_SIZE = "prototype.pool.size";
+
+    static final String REWIRE_COUNT =
+        "org.apache.aries.jax.rs.whiteboard.rewire.count";
+
+    static final String REWIRE_TIME =
+        "org.apache.aries.jax.rs.whiteboard.rewire.time";
+
+    static final String RUNTIME_SERVICE_ID =
+        "org.apache.aries.jax.rs.whiteboard.runtime.service.id";
+
+    private static final long _DEFAULT_ADMISSION_INITIAL_LIMIT = 100;
+
+    private static final long _DEFAULT_ADMISSION_LATENCY_THRESHOLD = 1000;
+
+    private static final long _DEFAULT_ADMISSION_MAX_LIMIT = 1000;
+
+    private static final long _DEFAULT_ADMISSION_MIN_LIMIT = 10;
+
+    private static final long _DEFAULT_INVOCATION_THREADS = 200;
+
+    private static final long _DEFAULT_PROTOTYPE_POOL_IDLE_TIMEOUT = 60000;
+
+    private static final long _DEPLOYMENT_METRICS_UPDATE_DELAY = 1000;
+
     private static final Logger _log = LoggerFactory.getLogger(
         Whiteboard.class);
+    private final AdmissionLimiter _admissionLimiter;
     private final String _applicationBasePrefix;
     private final Registry<CxfJaxrsServiceRegistrator> _applicationRegistry =
         new Registry<>();
@@ -142,11 +187,80 @@ public class Whiteboard {
     private volatile ServiceRegistration<JaxrsServiceRuntime>
         _runtimeRegistration;
     private OSGiResult _osgiResult;
+    private final ScheduledThreadPoolExecutor _rewireExecutor;
+    private final ThreadPoolExecutor _deploymentExecutor;
+    private ExecutorService _invocationExecutor;
+    private final DeploymentMetricsImpl _deploymentMetrics =
+        new DeploymentMetricsImpl(this::updateDeploymentMetricsProperties);
+    private volatile ServiceRegistration<DeploymentMetrics>
+        _deploymentMetricsRegistration;
+    private final AtomicBoolean _deploymentMetricsUpdate = new AtomicBoolean();
+    private final SharedBuses _sharedBuses;
 
     private Whiteboard(Dictionary<String, ?> configuration) {
         _runtime = new AriesJaxrsServiceRuntime(this);
         _configurationMap = Maps.from(configuration);
 
+        _rewireExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(
+                r, "Aries JAX-RS Whiteboard rewire " +
+                    _configurationMap.get(SERVICE_PID));
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        _rewireExecutor.setRemoveOnCancelPolicy(true);
+
+        int deploymentParallelism = (int)getLong(
+            _configurationMap.get("deployment.parallelism"), 1);
+
+        if (deploymentParallelism > 1) {
+            _deploymentExecutor = new ThreadPoolExecutor(
+                deploymentParallelism, deploymentParallelism, 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(
+                        r, "Aries JAX-RS Whiteboard deployment " +
+                            _configurationMap.get(SERVICE_PID));
+
+                    thread.setDaemon(true);
+
+                    return thread;
+                });
+
+            _deploymentExecutor.allowCoreThreadTimeOut(true);
+        }
+        else {
+            _deploymentExecutor = null;
+        }
+
+        if (getBoolean(_configurationMap.get("admission.control"), false)) {
+            _admissionLimiter = new AdmissionLimiter(
+                (int)getLong(
+                    _configurationMap.get("admission.initial.limit"),
+                    _DEFAULT_ADMISSION_INITIAL_LIMIT),
+                (int)getLong(
+                    _configurationMap.get("admission.min.limit"),
+                    _DEFAULT_ADMISSION_MIN_LIMIT),
+                (int)getLong(
+                    _configurationMap.get("admission.max.limit"),
+                    _DEFAULT_ADMISSION_MAX_LIMIT),
+                getLong(
+                    _configurationMap.get("admission.latency.threshold"),
+                    _DEFAULT_ADMISSION_LATENCY_THRESHOLD));
+        }
+        else {
+            _admissionLimiter = null;
+        }
+
+        if (getBoolean(_configurationMap.get("shared.bus"), false)) {
+            _sharedBuses = new SharedBuses();
+        }
+        else {
+            _sharedBuses = null;
+        }
+
         _applicationBasePrefix = canonicalizeAddress(
             getString(_configurationMap.get("application.base.prefix")));
 
@@ -169,13 +283,31 @@ public class Whiteboard {
             new HashMap<>(_configurationMap));
         _runtimeReference = _runtimeRegistration.getReference();
         _counter = new ServiceRegistrationChangeCounter(_runtimeRegistration);
+        _deploymentMetricsRegistration = _bundleContext.registerService(
+            DeploymentMetrics.class, _deploymentMetrics,
+            new Hashtable<>(
+                Collections.singletonMap(
+                    RUNTIME_SERVICE_ID,
+                    _runtimeReference.getProperty(Constants.SERVICE_ID))));
         _osgiResult = _program.run(bundleContext);
     }
 
     public void stop() {
         _osgiResult.close();
+        _deploymentMetricsRegistration.unregister();
         _runtimeRegistration.unregister();
         _applicationRegistry.close();
+        _rewireExecutor.shutdownNow();
+
+        if (_deploymentExecutor != null) {
+            _deploymentExecutor.shutdownNow();
+        }
+
+        synchronized (this) {
+            if (_invocationExecutor != null) {
+                _invocationExecutor.shutdownNow();
+            }
+        }
     }
 
     public void addHttpEndpoints(List<String> endpoints) {
@@ -187,6 +319,10 @@ public class Whiteboard {
         }
     }
 
+    public DeploymentMetricsImpl getDeploymentMetrics() {
+        return _deploymentMetrics;
+    }
+
     public ServiceReference<JaxrsServiceRuntime> getServiceReference() {
         return _runtimeReference;
     }
@@ -333,7 +469,7 @@ public class Whiteboard {
         }
     }
 
-    private static <T> OSGi<? extends ResourceProvider> getResourceProvider(
+    private <T> OSGi<? extends ResourceProvider> getResourceProvider(
         ServiceTuple<T> serviceTuple) {
 
         CachingServiceReference<T> cachingServiceReference =
@@ -360,16 +496,39 @@ public class Whiteboard {
                 );
             }
             else {
+                Map<String, Object> properties = Utils.getProperties(
+                    cachingServiceReference);
+
+                int poolSize = (int)getLong(
+                    getSetting(
+                        properties, _configurationMap, PROTOTYPE_POOL_SIZE),
+                    0);
+
+                PrototypeInstancePool pool = poolSize > 0 ?
+                    new PrototypeInstancePool(
+                        serviceTuple.getServiceObjects(), poolSize,
+                        getLong(
+                            getSetting(
+                                properties, _configurationMap,
+                                PROTOTYPE_POOL_IDLE_TIMEOUT),
+                            _DEFAULT_PROTOTYPE_POOL_IDLE_TIMEOUT),
+                        _rewireExecutor) :
+                    null;
+
                 return just(
                     new PrototypeServiceReferenceResourceProvider(
                         cachingServiceReference,
                         serviceTuple.getService().getClass(),
-                        serviceTuple.getServiceObjects())
+                        serviceTuple, pool)
                 ).effects(
                     __ -> {},
                     __ -> serviceTuple.dispose(),
                     __ -> {},
-                    __ -> {}
+                    __ -> {
+                        if (pool != null) {
+                            pool.close();
+                        }
+                    }
                 );
             }
         }
@@ -572,8 +731,112 @@ public class Whiteboard {
         ));
     }
 
+    private Bus acquireBus(
+        Map<String, ServiceTuple<Object>> extensions, String applicationName) {
+
+        long start = System.nanoTime();
+
+        try {
+            return doAcquireBus(extensions);
+        }
+        finally {
+            _deploymentMetrics.record(
+                applicationName, DeploymentMetrics.CREATE_BUS,
+                System.nanoTime() - start);
+        }
+    }
+
+    private Bus doAcquireBus(Map<String, ServiceTuple<Object>> extensions) {
+        if (_sharedBuses == null) {
+            return createBus(extensions, ServiceTuple::getService);
+        }
+
+        // the bus outlives the application that created it, so it holds its
+        // own instances of the extensions
+        Map<String, Object> key = new TreeMap<>();
+
+        for (Map.Entry<String, ServiceTuple<Object>> entry :
+            extensions.entrySet()) {
+
+            key.put(
+                entry.getKey(),
+                entry.getValue().getCachingServiceReference().getProperty(
+                    "service.id"));
+        }
+
+        return _sharedBuses.acquire(
+            key,
+            releases -> createBus(
+                extensions,
+                serviceTuple -> {
+                    ServiceObjects<Object> serviceObjects =
+                        serviceTuple.getServiceObjects();
+
+                    Object service = serviceObjects.getService();
+
+                    releases.add(() -> serviceObjects.ungetService(service));
+
+                    return service;
+                }));
+    }
+
+    /**
+     * Rebuilds happen in bursts, and every update of the runtime properties
+     * is a synchronous service event, so the properties are updated at most
+     * once per delay, off the thread that rebuilt the application.
+     */
+    private void updateDeploymentMetricsProperties() {
+        if (!_deploymentMetricsUpdate.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            _rewireExecutor.schedule(
+                this::doUpdateDeploymentMetricsProperties,
+                _DEPLOYMENT_METRICS_UPDATE_DELAY, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException ree) {
+            _deploymentMetricsUpdate.set(false);
+        }
+    }
+
+    private void doUpdateDeploymentMetricsProperties() {
+        _deploymentMetricsUpdate.set(false);
+
+        ServiceRegistration<JaxrsServiceRuntime> runtimeRegistration =
+            _runtimeRegistration;
+
+        if (runtimeRegistration == null) {
+            return;
+        }
+
+        Map<String, Object> properties = new HashMap<>();
+
+        properties.put(REWIRE_COUNT, _deploymentMetrics.getRewireCount());
+        properties.put(REWIRE_TIME, _deploymentMetrics.getRewireTime());
+
+        try {
+            synchronized (runtimeRegistration) {
+                updateProperties(runtimeRegistration, properties);
+            }
+        }
+        catch (IllegalStateException ise) {
+            // the whiteboard stopped meanwhile
+        }
+    }
+
+    private void releaseBus(Bus bus) {
+        if (_sharedBuses == null) {
+            bus.shutdown(false);
+        }
+        else {
+            _sharedBuses.release(bus);
+        }
+    }
+
     private ExtensionManagerBus createBus(
-        Map<String, ServiceTuple<Object>> extensions) {
+        Map<String, ServiceTuple<Object>> extensions,
+        Function<ServiceTuple<Object>, Object> instances) {
 
         BundleWiring wiring = _bundleContext.getBundle().adapt(
             BundleWiring.class);
@@ -600,7 +863,7 @@ public class Whiteboard {
                 try {
                     Class<?> clazz = classLoader.loadClass(className);
 
-                    cxfExtensions.put(clazz, serviceTuple.getService());
+                    cxfExtensions.put(clazz, instances.apply(serviceTuple));
                 }
                 catch (Exception e) {
                     if (_log.isErrorEnabled()) {
@@ -619,6 +882,11 @@ public class Whiteboard {
         ExtensionManagerBus bus = new ExtensionManagerBus(
             cxfExtensions, properties, wiring.getClassLoader());
 
+        if (_deploymentExecutor != null) {
+            // initialized by the registrator on the deployment executor
+            return bus;
+        }
+
         bus.initialize();
 
         if (_log.isDebugEnabled()) {
@@ -672,7 +940,7 @@ public class Whiteboard {
                     registrator, registrator.getProperties())).
                 then(
             registerCXFServletService(
-                    registrator.getBus(), properties, contextReference).
+                    registrator, properties, contextReference).
                 then(
             just(registrator)
         ))));
@@ -726,17 +994,71 @@ public class Whiteboard {
             getClassLoader();
     }
 
+    /**
+     * Returns the executor resource methods of applications in the virtual
+     * invocation mode run on: a virtual thread per invocation when the JVM
+     * supports them, a bounded pool of platform threads otherwise. The pool
+     * rejects invocations once all its threads are busy, and those are
+     * invoked on the container thread.
+     */
+    private synchronized ExecutorService getInvocationExecutor() {
+        if (_invocationExecutor != null) {
+            return _invocationExecutor;
+        }
+
+        try {
+            _invocationExecutor = (ExecutorService)Executors.class.getMethod(
+                "newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (Exception e) {
+            if (_log.isDebugEnabled()) {
+                _log.debug(
+                    "Virtual threads are not available, resource methods " +
+                        "will be invoked on platform threads", e);
+            }
+
+            int invocationThreads = (int)getLong(
+                _configurationMap.get("invocation.threads"),
+                _DEFAULT_INVOCATION_THREADS);
+
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                invocationThreads, invocationThreads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+                    Thread thread = new Thread(
+                        r, "Aries JAX-RS Whiteboard invocation " +
+                            _configurationMap.get(SERVICE_PID));
+
+                    thread.setDaemon(true);
+
+                    return thread;
+                });
+
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+
+            _invocationExecutor = threadPoolExecutor;
+        }
+
+        return _invocationExecutor;
+    }
+
     private OSGi<CxfJaxrsServiceRegistrator> createRegistrator(
         Map<String, ServiceTuple<Object>> extensions,
         ServiceTuple<Application> tuple, Map<String, Object> props) {
 
         return
             just(() -> new CxfJaxrsServiceRegistrator(
-                    createBus(extensions), tuple, props, _runtime)).
+                    acquireBus(extensions, getServiceName(props::get)), tuple,
+                    props, _configurationMap, _rewireExecutor,
+                    this::getInvocationExecutor, _deploymentMetrics,
+                    _runtime)).
             effects(
                 __ -> {},
-                CxfJaxrsServiceRegistrator::enable,
-                CxfJaxrsServiceRegistrator::close,
+                registrator -> registrator.enable(_deploymentExecutor),
+                registrator -> {
+                    registrator.close();
+
+                    releaseBus(registrator.getBus());
+                },
                 __ -> {});
     }
 
@@ -863,11 +1185,15 @@ public class Whiteboard {
                 ).
                 then(nothing())
             ).flatMap(
-                Whiteboard::getResourceProvider
+                this::getResourceProvider
             ).effects(
                 rp -> _runtime.addApplicationEndpoint(
                     properties::get, serviceReference,
-                    registrator.getBus(), rp.getResourceClass()),
+                    registrator.getBus(), rp.getResourceClass(),
+                    rp instanceof PrototypeServiceReferenceResourceProvider ?
+                        ((PrototypeServiceReferenceResourceProvider)rp).
+                            getPool() :
+                        null),
                 rp -> _runtime.removeApplicationEndpoint(
                     properties::get, serviceReference)
             ).effects(
@@ -1266,20 +1592,6 @@ public class Whiteboard {
         );
     }
 
-    private static CXFNonSpringServlet createCXFServlet(Bus bus) {
-        CXFNonSpringServlet cxfNonSpringServlet = new CXFNonSpringServlet() {
-
-            @Override
-            public void destroyBus() {
-            }
-
-        };
-
-        cxfNonSpringServlet.setBus(bus);
-
-        return cxfNonSpringServlet;
-    }
-
     private static OSGi<CachingServiceReference<Object>>
         onlySupportedInterfaces(
             OSGi<CachingServiceReference<Object>> program,
@@ -1300,7 +1612,8 @@ public class Whiteboard {
     }
 
     private OSGi<ServiceRegistration<Servlet>> registerCXFServletService(
-        Bus bus, Map<String, Object> serviceProperties,
+        CxfJaxrsServiceRegistrator registrator,
+        Map<String, Object> serviceProperties,
         CachingServiceReference<ServletContextHelper> contextReference) {
 
         String address = canonicalizeAddress(
@@ -1405,7 +1718,8 @@ public class Whiteboard {
                         Bundle bundle,
                         ServiceRegistration<Servlet> registration) {
 
-                        return createCXFServlet(bus);
+                        return new CxfJaxrsServlet(
+                            registrator, _admissionLimiter);
                     }
 
                     @Override
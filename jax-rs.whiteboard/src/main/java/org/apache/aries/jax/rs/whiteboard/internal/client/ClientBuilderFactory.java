@@ -17,6 +17,8 @@
 
 package org.apache.aries.jax.rs.whiteboard.internal.client;
 
+import java.util.concurrent.ExecutorService;
+
 import javax.ws.rs.client.ClientBuilder;
 
 import org.osgi.framework.Bundle;
@@ -26,11 +28,29 @@ import org.osgi.framework.ServiceRegistration;
 public class ClientBuilderFactory
     implements PrototypeServiceFactory<ClientBuilder> {
 
+    public ClientBuilderFactory() {
+        this(null);
+    }
+
+    /**
+     * The builders are given {@code executorService}, when not null, until
+     * they are given another executor.
+     */
+    public ClientBuilderFactory(ExecutorService executorService) {
+        _executorService = executorService;
+    }
+
     @Override
     public ClientBuilder getService(
         Bundle bundle, ServiceRegistration<ClientBuilder> registration) {
 
-        return new ClientBuilderImpl();
+        ClientBuilder clientBuilder = new ClientBuilderImpl();
+
+        if (_executorService != null) {
+            clientBuilder.executorService(_executorService);
+        }
+
+        return clientBuilder;
     }
 
     @Override
@@ -40,4 +60,6 @@ public class ClientBuilderFactory
 
     }
 
+    private final ExecutorService _executorService;
+
 }
\ No newline at end of file
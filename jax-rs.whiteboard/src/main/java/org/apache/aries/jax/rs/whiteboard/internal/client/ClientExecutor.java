@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal.client;
+
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.COUNTER_REJECTED_TASKS;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.GAUGE_ACTIVE_TASKS;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.GAUGE_QUEUED_TASKS;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.TASK;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import org.apache.aries.jax.rs.whiteboard.internal.DeploymentMetricsImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The executor clients built from the {@code ClientBuilder} service use when
+ * they are not given one, so asynchronous requests and promise callbacks
+ * share a bounded number of named threads, or get a virtual thread each when
+ * the JVM supports them. Its queue depth, active tasks and task latency are
+ * reported to {@code deploymentMetrics} as the {@link #NAME} application.
+ */
+public class ClientExecutor extends AbstractExecutorService {
+
+    public static final String NAME = "client";
+
+    public ClientExecutor(
+        int threads, int queueSize, boolean virtual,
+        DeploymentMetricsImpl deploymentMetrics) {
+
+        _deploymentMetrics = deploymentMetrics;
+
+        configure(threads, queueSize, virtual);
+
+        _deploymentMetrics.addGauge(NAME, GAUGE_ACTIVE_TASKS, _activeTasks);
+        _deploymentMetrics.addGauge(NAME, GAUGE_QUEUED_TASKS, _queuedTasks);
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        for (ExecutorService executorService : getExecutorServices()) {
+            if (!executorService.awaitTermination(
+                    deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+
+                return false;
+            }
+        }
+
+        return isTerminated();
+    }
+
+    /**
+     * Resizes the pool of platform threads in place. A new queue size, or
+     * switching between platform and virtual threads, replaces the executor
+     * running new tasks, and the previous one is shut down once it has run
+     * the tasks it already holds.
+     */
+    public synchronized void configure(
+        int threads, int queueSize, boolean virtual) {
+
+        if (_shutdown) {
+            return;
+        }
+
+        threads = Math.max(1, threads);
+        queueSize = Math.max(0, queueSize);
+
+        boolean threadPerTask = virtual && _newThreadPerTaskExecutor != null;
+
+        ExecutorService previous = _executorService;
+
+        if (previous != null && threadPerTask == _threadPerTask &&
+            (threadPerTask || queueSize == _queueSize)) {
+
+            if (!threadPerTask) {
+                resize((ThreadPoolExecutor)previous, threads);
+            }
+
+            return;
+        }
+
+        _executorService = threadPerTask ?
+            createThreadPerTaskExecutor() : createPool(threads, queueSize);
+        _queueSize = queueSize;
+        _threadPerTask = threadPerTask;
+
+        if (previous != null) {
+            previous.shutdown();
+
+            _retired.removeIf(ExecutorService::isTerminated);
+            _retired.add(previous);
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        long start = System.nanoTime();
+
+        Runnable task = () -> {
+            _activeTaskCount.incrementAndGet();
+
+            try {
+                command.run();
+            }
+            finally {
+                _activeTaskCount.decrementAndGet();
+
+                _deploymentMetrics.record(
+                    NAME, TASK, System.nanoTime() - start);
+            }
+        };
+
+        while (true) {
+            ExecutorService executorService = _executorService;
+
+            try {
+                executorService.execute(task);
+
+                return;
+            }
+            catch (RejectedExecutionException ree) {
+                // a new configuration may have retired the executor
+
+                if (_shutdown || (executorService == _executorService)) {
+                    _deploymentMetrics.getCounter(
+                        NAME, COUNTER_REJECTED_TASKS).increment();
+
+                    throw ree;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return _shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        if (!_shutdown) {
+            return false;
+        }
+
+        for (ExecutorService executorService : getExecutorServices()) {
+            if (!executorService.isTerminated()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        if (_shutdown) {
+            return;
+        }
+
+        _shutdown = true;
+
+        _executorService.shutdown();
+
+        _deploymentMetrics.removeGauge(NAME, GAUGE_ACTIVE_TASKS, _activeTasks);
+        _deploymentMetrics.removeGauge(NAME, GAUGE_QUEUED_TASKS, _queuedTasks);
+    }
+
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+        shutdown();
+
+        List<Runnable> tasks = new ArrayList<>();
+
+        for (ExecutorService executorService : getExecutorServices()) {
+            tasks.addAll(executorService.shutdownNow());
+        }
+
+        return tasks;
+    }
+
+    private static BlockingQueue<Runnable> createQueue(int queueSize) {
+        if (queueSize <= 0) {
+            return new SynchronousQueue<>();
+        }
+
+        return new LinkedBlockingQueue<>(queueSize);
+    }
+
+    /**
+     * Virtual threads are created through reflection, this bundle still runs
+     * on Java 8.
+     */
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+
+            builder = builderClass.getMethod(
+                "name", String.class, long.class
+            ).invoke(
+                builder, _THREAD_NAME, 1L
+            );
+
+            return (ThreadFactory)builderClass.getMethod("factory").invoke(
+                builder);
+        }
+        catch (Exception e) {
+            if (_log.isDebugEnabled()) {
+                _log.debug(
+                    "Virtual threads are not available, client tasks will " +
+                        "run on platform threads", e);
+            }
+
+            return null;
+        }
+    }
+
+    private static Method getNewThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod(
+                "newThreadPerTaskExecutor", ThreadFactory.class);
+        }
+        catch (NoSuchMethodException nsme) {
+            return null;
+        }
+    }
+
+    private static void resize(ThreadPoolExecutor pool, int threads) {
+        if (threads > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(threads);
+            pool.setCorePoolSize(threads);
+        }
+        else {
+            pool.setCorePoolSize(threads);
+            pool.setMaximumPoolSize(threads);
+        }
+    }
+
+    private ThreadPoolExecutor createPool(int threads, int queueSize) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            threads, threads, 60, TimeUnit.SECONDS, createQueue(queueSize),
+            r -> {
+                Thread thread = new Thread(
+                    r, _THREAD_NAME + _threadCount.incrementAndGet());
+
+                thread.setDaemon(true);
+
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+
+        pool.allowCoreThreadTimeOut(true);
+
+        return pool;
+    }
+
+    private ExecutorService createThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService)_newThreadPerTaskExecutor.invoke(
+                null, _virtualThreadFactory);
+        }
+        catch (ReflectiveOperationException roe) {
+            throw new IllegalStateException(roe);
+        }
+    }
+
+    private synchronized List<ExecutorService> getExecutorServices() {
+        List<ExecutorService> executorServices = new ArrayList<>(_retired);
+
+        executorServices.add(_executorService);
+
+        return executorServices;
+    }
+
+    private static final String _THREAD_NAME =
+        "Aries JAX-RS Whiteboard client ";
+
+    private static final Logger _log = LoggerFactory.getLogger(
+        ClientExecutor.class);
+
+    private static final ThreadFactory _virtualThreadFactory =
+        createVirtualThreadFactory();
+
+    private static final Method _newThreadPerTaskExecutor =
+        _virtualThreadFactory == null ? null : getNewThreadPerTaskExecutor();
+
+    private final AtomicInteger _activeTaskCount = new AtomicInteger();
+    private final LongSupplier _activeTasks = _activeTaskCount::get;
+    private final DeploymentMetricsImpl _deploymentMetrics;
+    private volatile ExecutorService _executorService;
+    private final LongSupplier _queuedTasks = () -> {
+        ExecutorService executorService = _executorService;
+
+        return executorService instanceof ThreadPoolExecutor ?
+            ((ThreadPoolExecutor)executorService).getQueue().size() : 0;
+    };
+    private int _queueSize;
+    private final List<ExecutorService> _retired = new ArrayList<>();
+    private volatile boolean _shutdown;
+    private final AtomicInteger _threadCount = new AtomicInteger();
+    private boolean _threadPerTask;
+
+}
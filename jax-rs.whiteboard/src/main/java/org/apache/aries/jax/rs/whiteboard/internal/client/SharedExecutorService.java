@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal.client;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands an executor to other bundles, which may submit tasks to it but not
+ * shut it down, that is left to the bundle that owns it.
+ */
+public class SharedExecutorService extends AbstractExecutorService {
+
+    public SharedExecutorService(ExecutorService executorService) {
+        _executorService = executorService;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        return _executorService.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        _executorService.execute(command);
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return _executorService.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return _executorService.isTerminated();
+    }
+
+    @Override
+    public void shutdown() {
+        throw new IllegalStateException(
+            "A shared executor is only shut down by its owner");
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        throw new IllegalStateException(
+            "A shared executor is only shut down by its owner");
+    }
+
+    private final ExecutorService _executorService;
+
+}
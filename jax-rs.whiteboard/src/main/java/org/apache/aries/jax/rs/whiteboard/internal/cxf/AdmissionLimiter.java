@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the requests a whiteboard serves at once across all of its
+ * applications. The limit adapts to the latency of the requests: it grows by
+ * one for every request completed in time while at least half of the limit
+ * is in use, and shrinks by a tenth for every request slower than the
+ * latency threshold. Low priority requests are shed once three quarters of
+ * the limit are in use, high priority requests are never shed.
+ */
+public class AdmissionLimiter {
+
+    public enum Priority {
+
+        HIGH, NORMAL, LOW;
+
+        public static Priority from(Object value) {
+            if (value == null) {
+                return NORMAL;
+            }
+
+            try {
+                return valueOf(
+                    String.valueOf(value).trim().toUpperCase(Locale.ROOT));
+            }
+            catch (IllegalArgumentException iae) {
+                return NORMAL;
+            }
+        }
+
+    }
+
+    public AdmissionLimiter(
+        int initialLimit, int minLimit, int maxLimit, long latencyThreshold) {
+
+        _minLimit = Math.max(1, minLimit);
+        _maxLimit = Math.max(_minLimit, maxLimit);
+        _limit = Math.min(_maxLimit, Math.max(_minLimit, initialLimit));
+        _latencyThreshold = TimeUnit.MILLISECONDS.toNanos(latencyThreshold);
+    }
+
+    /**
+     * Returns whether a request of {@code priority} may proceed, in which
+     * case {@link #release(long)} must be called once it is served.
+     */
+    public boolean acquire(Priority priority) {
+        while (true) {
+            int inFlight = _inFlight.get();
+
+            if (priority != Priority.HIGH &&
+                inFlight >= getShare(priority) * _limit) {
+
+                return false;
+            }
+
+            if (_inFlight.compareAndSet(inFlight, inFlight + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public int getInFlight() {
+        return _inFlight.get();
+    }
+
+    public int getLimit() {
+        return (int)_limit;
+    }
+
+    /**
+     * Ends a request admitted by {@link #acquire(Priority)} that took
+     * {@code nanos} to be served. A negative {@code nanos} ends a request
+     * that tells nothing about the latency, leaving the limit as it is.
+     */
+    public void release(long nanos) {
+        int inFlight = _inFlight.getAndDecrement();
+
+        if (nanos < 0) {
+            return;
+        }
+
+        synchronized (this) {
+            if (nanos > _latencyThreshold) {
+                _limit = Math.max(_minLimit, _limit * _BACKOFF_RATIO);
+            }
+            else if (inFlight * 2 >= _limit) {
+                _limit = Math.min(_maxLimit, _limit + 1);
+            }
+        }
+    }
+
+    private static double getShare(Priority priority) {
+        return priority == Priority.LOW ? _LOW_PRIORITY_SHARE : 1;
+    }
+
+    private static final double _BACKOFF_RATIO = 0.9;
+
+    private static final double _LOW_PRIORITY_SHARE = 0.75;
+
+    private final AtomicInteger _inFlight = new AtomicInteger();
+    private final long _latencyThreshold;
+    private volatile double _limit;
+    private final int _maxLimit;
+    private final int _minLimit;
+
+}
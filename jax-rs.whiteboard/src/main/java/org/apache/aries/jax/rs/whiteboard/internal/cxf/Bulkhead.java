@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the requests an application serves at once, so a slow application
+ * cannot hold every container thread. Requests over the limit wait for up to
+ * the queue timeout while there is room in the queue, and are rejected
+ * otherwise.
+ */
+public class Bulkhead {
+
+    public Bulkhead(
+        int limit, int queueSize, long queueTimeout, LongAdder rejected) {
+
+        _permits = new Semaphore(limit, true);
+        _queueSize = queueSize;
+        _queueTimeout = queueTimeout;
+        _rejected = rejected;
+    }
+
+    /**
+     * Returns whether the request may proceed, in which case {@link
+     * #release()} must be called once it is served.
+     */
+    public boolean acquire() {
+        try {
+            // unlike tryAcquire(), honours the fairness of the semaphore
+            // instead of barging ahead of the queued requests
+            if (_permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                _inFlight.incrementAndGet();
+
+                return true;
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+
+            _rejected.increment();
+
+            return false;
+        }
+
+        if (_queued.incrementAndGet() > _queueSize) {
+            _queued.decrementAndGet();
+
+            _rejected.increment();
+
+            return false;
+        }
+
+        boolean acquired = false;
+
+        try {
+            acquired = _permits.tryAcquire(
+                _queueTimeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            _queued.decrementAndGet();
+        }
+
+        if (acquired) {
+            _inFlight.incrementAndGet();
+        }
+        else {
+            _rejected.increment();
+        }
+
+        return acquired;
+    }
+
+    public long getInFlight() {
+        return _inFlight.get();
+    }
+
+    public long getQueued() {
+        return _queued.get();
+    }
+
+    public void release() {
+        _inFlight.decrementAndGet();
+
+        _permits.release();
+    }
+
+    private final AtomicInteger _inFlight = new AtomicInteger();
+    private final Semaphore _permits;
+    private final AtomicInteger _queued = new AtomicInteger();
+    private final int _queueSize;
+    private final long _queueTimeout;
+    private final LongAdder _rejected;
+
+}
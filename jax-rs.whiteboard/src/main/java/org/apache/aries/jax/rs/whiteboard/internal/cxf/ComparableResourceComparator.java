@@ -24,12 +24,58 @@ import org.apache.cxf.jaxrs.model.ClassResourceInfo;
 import org.apache.cxf.jaxrs.model.OperationResourceInfo;
 import org.apache.cxf.message.Message;
 
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 
 public class ComparableResourceComparator
     implements ResourceComparator {
 
+    /**
+     * Numbers {@code resourceProviders} from the highest ranked service down,
+     * so that comparing two of them while matching a request does not read
+     * their service properties. Called whenever the providers of an
+     * application change.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public static void assignRankOrdinals(
+        Collection<? extends ResourceProvider> resourceProviders) {
+
+        List<ServiceReferenceResourceProvider> providers = new ArrayList<>();
+
+        for (ResourceProvider resourceProvider : resourceProviders) {
+            if (resourceProvider instanceof ServiceReferenceResourceProvider) {
+                providers.add(
+                    (ServiceReferenceResourceProvider)resourceProvider);
+            }
+        }
+
+        providers.sort(
+            (rp1, rp2) -> ((CachingServiceReference)
+                rp2.getImmutableServiceReference()).compareTo(
+                    rp1.getImmutableServiceReference()));
+
+        int rankOrdinal = 0;
+        Object previousRanking = null;
+
+        for (int i = 0; i < providers.size(); i++) {
+            ServiceReferenceResourceProvider provider = providers.get(i);
+
+            Object serviceRanking =
+                provider.getImmutableServiceReference().getProperty(
+                    "service.ranking");
+
+            if (i > 0 && !Objects.equals(previousRanking, serviceRanking)) {
+                rankOrdinal++;
+            }
+
+            provider.setRankOrdinal(rankOrdinal);
+
+            previousRanking = serviceRanking;
+        }
+    }
+
     @Override
     public int compare(
         ClassResourceInfo cri1, ClassResourceInfo cri2, Message message) {
@@ -40,9 +86,9 @@ public class ComparableResourceComparator
         if (rp1 instanceof ServiceReferenceResourceProvider &&
             rp2 instanceof ServiceReferenceResourceProvider) {
 
-            return comparator.compare(
-                (ServiceReferenceResourceProvider)rp2,
-                (ServiceReferenceResourceProvider)rp1);
+            return Integer.compare(
+                ((ServiceReferenceResourceProvider)rp1).getRankOrdinal(),
+                ((ServiceReferenceResourceProvider)rp2).getRankOrdinal());
         }
 
         if (rp1 instanceof ServiceReferenceResourceProvider) {
@@ -64,34 +110,4 @@ public class ComparableResourceComparator
         return 0;
     }
 
-    private static Comparator<ServiceReferenceResourceProvider> comparator =
-        new ServiceReferenceResourceProviderComparator();
-
-    private static class ServiceReferenceResourceProviderComparator
-        implements Comparator<ServiceReferenceResourceProvider> {
-
-        @Override
-        @SuppressWarnings({ "rawtypes", "unchecked" })
-        public int compare(
-            ServiceReferenceResourceProvider rp1,
-            ServiceReferenceResourceProvider rp2) {
-
-            CachingServiceReference ref1 = rp1.getImmutableServiceReference();
-            CachingServiceReference ref2 = rp2.getImmutableServiceReference();
-
-            Object serviceRanking1 = ref1.getProperty("service.ranking");
-            Object serviceRanking2 = ref2.getProperty("service.ranking");
-
-            if ((serviceRanking1 == null && serviceRanking2 == null) ||
-                Objects.equals(serviceRanking1, serviceRanking2)) {
-
-                return 0;
-            }
-            else {
-                return ref1.compareTo(ref2);
-            }
-        }
-
-    }
-
 }
@@ -18,9 +18,30 @@
 package org.apache.aries.jax.rs.whiteboard.internal.cxf;
 
 import static java.util.stream.Collectors.toMap;
-import static java.util.stream.Collectors.toSet;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.COUNTER_DEBOUNCED_CHANGES;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.COUNTER_DEBOUNCED_REWIRES;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.COUNTER_PROVIDER_CACHE_HIT;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.COUNTER_PROVIDER_CACHE_MISS;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.COUNTER_REJECTED_REQUESTS;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.COUNTER_REJECTED_STREAMS;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.COUNTER_SHED_REQUESTS;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.CREATE_BUS;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.CREATE_ENDPOINT;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.GAUGE_ACTIVE_STREAMS;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.GAUGE_IN_FLIGHT_REQUESTS;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.GAUGE_QUEUED_REQUESTS;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.REWIRE;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.TRIGGER_APPLICATION;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.TRIGGER_EXTENSION;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.TRIGGER_REQUEST;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.TRIGGER_RESOURCE;
+import static org.apache.aries.jax.rs.whiteboard.internal.AriesJaxrsServiceRuntime.getServiceName;
 import static org.apache.aries.jax.rs.whiteboard.internal.Whiteboard.SUPPORTED_EXTENSION_INTERFACES;
 import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.canonicalize;
+import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.getBoolean;
+import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.getLong;
+import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.getSetting;
+import static org.apache.aries.jax.rs.whiteboard.internal.utils.Utils.getString;
 import static org.apache.cxf.jaxrs.provider.ProviderFactory.DEFAULT_FILTER_NAME_BINDING;
 
 import java.lang.reflect.Modifier;
@@ -30,29 +51,48 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 import javax.ws.rs.RuntimeType;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseFilter;
 import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.PreMatching;
 import javax.ws.rs.core.Application;
 import javax.ws.rs.core.Feature;
 import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
 
 import org.apache.aries.component.dsl.CachingServiceReference;
 import org.apache.aries.component.dsl.OSGi;
 import org.apache.aries.jax.rs.whiteboard.ApplicationClasses;
 import org.apache.aries.jax.rs.whiteboard.internal.AriesJaxrsServiceRuntime;
+import org.apache.aries.jax.rs.whiteboard.internal.DeploymentMetricsImpl;
 import org.apache.aries.jax.rs.whiteboard.internal.ServiceReferenceRegistry;
 import org.apache.aries.jax.rs.whiteboard.internal.introspection.Proxies;
 import org.apache.aries.jax.rs.whiteboard.internal.utils.ServiceTuple;
 import org.apache.cxf.Bus;
+import org.apache.cxf.bus.extension.ExtensionManagerBus;
 import org.apache.cxf.common.util.ClassHelper;
 import org.apache.cxf.endpoint.Endpoint;
 import org.apache.cxf.endpoint.Server;
@@ -68,11 +108,18 @@ import org.apache.cxf.jaxrs.model.ApplicationInfo;
 import org.apache.cxf.jaxrs.model.ClassResourceInfo;
 import org.apache.cxf.jaxrs.provider.ProviderFactory.ProviderInfoClassComparator;
 import org.apache.cxf.jaxrs.provider.ServerConfigurableFactory;
+import org.apache.cxf.jaxrs.provider.ServerProviderFactory;
 import org.apache.cxf.jaxrs.sse.SseContextProvider;
 import org.apache.cxf.jaxrs.sse.SseEventSinkContextProvider;
 import org.apache.cxf.jaxrs.utils.AnnotationUtils;
+import org.apache.cxf.jaxrs.utils.InjectionUtils;
 import org.apache.cxf.jaxrs.utils.ResourceUtils;
 import org.apache.cxf.message.Message;
+import org.apache.cxf.transport.http.DestinationRegistry;
+import org.apache.cxf.transport.http.DestinationRegistryImpl;
+import org.apache.cxf.transport.http.HTTPTransportFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class CxfJaxrsServiceRegistrator {
 
@@ -85,10 +132,122 @@ public class CxfJaxrsServiceRegistrator {
         Map<String, ?> properties,
         AriesJaxrsServiceRuntime ariesJaxrsServiceRuntime) {
 
+        this(
+            bus, applicationTuple, properties, Collections.emptyMap(), null,
+            () -> null, new DeploymentMetricsImpl(),
+            ariesJaxrsServiceRuntime);
+    }
+
+    public CxfJaxrsServiceRegistrator(
+        Bus bus, ServiceTuple<Application> applicationTuple,
+        Map<String, ?> properties, Map<String, ?> configuration,
+        ScheduledExecutorService scheduledExecutorService,
+        Supplier<? extends Executor> invocationExecutor,
+        DeploymentMetricsImpl deploymentMetrics,
+        AriesJaxrsServiceRuntime ariesJaxrsServiceRuntime) {
+
         _bus = bus;
         _applicationTuple = applicationTuple;
         _properties = Collections.unmodifiableMap(new HashMap<>(properties));
+        _deploymentMetrics = deploymentMetrics;
+        _applicationName = getServiceName(_properties::get);
+
+        _deploymentMetrics.addApplication(_applicationName);
         _ariesJaxrsServiceRuntime = ariesJaxrsServiceRuntime;
+        _incrementalRewire = getBoolean(
+            getSetting(_properties, configuration, INCREMENTAL_REWIRE), false);
+
+        long quietPeriod = getLong(
+            getSetting(_properties, configuration, REWIRE_QUIET_PERIOD), 0);
+
+        if (quietPeriod > 0 && scheduledExecutorService != null) {
+            _rewireScheduler = new RewireScheduler(
+                scheduledExecutorService, quietPeriod,
+                getLong(
+                    getSetting(_properties, configuration, REWIRE_MAX_DELAY),
+                    _DEFAULT_REWIRE_MAX_DELAY),
+                this::scheduledRewire);
+        }
+        else {
+            _rewireScheduler = null;
+        }
+
+        _deploymentTimeout = getLong(
+            configuration.get(DEPLOYMENT_TIMEOUT),
+            _DEFAULT_DEPLOYMENT_TIMEOUT);
+        _lazyDeployment = getBoolean(
+            getSetting(_properties, configuration, LAZY_DEPLOYMENT), false);
+        _idleTimeout = getLong(
+            getSetting(_properties, configuration, IDLE_TIMEOUT), 0);
+        _scheduledExecutorService = scheduledExecutorService;
+
+        int concurrencyLimit = (int)getLong(
+            getSetting(_properties, configuration, CONCURRENCY_LIMIT), 0);
+
+        if (concurrencyLimit > 0) {
+            _bulkhead = new Bulkhead(
+                concurrencyLimit,
+                (int)getLong(
+                    getSetting(
+                        _properties, configuration, CONCURRENCY_QUEUE_SIZE),
+                    0),
+                getLong(
+                    getSetting(
+                        _properties, configuration, CONCURRENCY_QUEUE_TIMEOUT),
+                    _DEFAULT_CONCURRENCY_QUEUE_TIMEOUT),
+                deploymentMetrics.getCounter(
+                    _applicationName, COUNTER_REJECTED_REQUESTS));
+            _inFlightGauge = _bulkhead::getInFlight;
+            _queuedGauge = _bulkhead::getQueued;
+
+            deploymentMetrics.addGauge(
+                _applicationName, GAUGE_IN_FLIGHT_REQUESTS, _inFlightGauge);
+            deploymentMetrics.addGauge(
+                _applicationName, GAUGE_QUEUED_REQUESTS, _queuedGauge);
+        }
+        else {
+            _bulkhead = null;
+            _inFlightGauge = null;
+            _queuedGauge = null;
+        }
+
+        _requestPriority = AdmissionLimiter.Priority.from(
+            getSetting(_properties, configuration, REQUEST_PRIORITY));
+        _shedRequests = deploymentMetrics.getCounter(
+            _applicationName, COUNTER_SHED_REQUESTS);
+        _retryAfter = getLong(
+            getSetting(_properties, configuration, CONCURRENCY_RETRY_AFTER),
+            _DEFAULT_CONCURRENCY_RETRY_AFTER);
+
+        if (INVOCATION_EXECUTOR_VIRTUAL.equals(
+                getString(
+                    getSetting(
+                        _properties, configuration, INVOCATION_EXECUTOR)))) {
+
+            _invocationExecutor = invocationExecutor.get();
+        }
+        else {
+            _invocationExecutor = null;
+        }
+
+        int publisherMaxStreams = (int)getLong(
+            getSetting(_properties, configuration, PUBLISHER_MAX_STREAMS),
+            _DEFAULT_PUBLISHER_MAX_STREAMS);
+
+        if (publisherMaxStreams > 0) {
+            _streamLimit = new StreamLimit(
+                publisherMaxStreams, _retryAfter,
+                deploymentMetrics.getCounter(
+                    _applicationName, COUNTER_REJECTED_STREAMS));
+            _activeStreamsGauge = _streamLimit::getActive;
+
+            deploymentMetrics.addGauge(
+                _applicationName, GAUGE_ACTIVE_STREAMS, _activeStreamsGauge);
+        }
+        else {
+            _streamLimit = null;
+            _activeStreamsGauge = null;
+        }
 
         Comparator<ServiceTuple<?>> comparing = Comparator.comparing(
             ServiceTuple::getCachingServiceReference);
@@ -103,7 +262,19 @@ public class CxfJaxrsServiceRegistrator {
         _services.add(resourceProvider);
 
         try {
-            rewire();
+            if (addIncrementally(resourceProvider)) {
+                updateApplicationClasses(
+                    _jaxRsServerFactoryBean, _applicationClasses);
+
+                _routingInterceptor.update(_server.getEndpoint());
+            }
+            else {
+                _pendingTriggers.add(TRIGGER_RESOURCE);
+
+                if (!scheduleRewire()) {
+                    rewire();
+                }
+            }
         }
         catch (Exception e) {
             remove(resourceProvider);
@@ -112,11 +283,61 @@ public class CxfJaxrsServiceRegistrator {
         }
     }
 
+    /**
+     * Called by the servlet before each request. The endpoint of a lazy
+     * application is built on its first request.
+     */
+    public void beginRequest() {
+        _requests.incrementAndGet();
+
+        if (!_lazyDeployment || _materialized) {
+            return;
+        }
+
+        synchronized (this) {
+            if (_materialized || !_enabled) {
+                return;
+            }
+
+            _lastRequest = System.nanoTime();
+            _materializing = true;
+            _pendingTriggers.add(TRIGGER_REQUEST);
+
+            try {
+                rewireIsolatingFailures();
+            }
+            finally {
+                _materializing = false;
+            }
+
+            // concurrent requests only skip the monitor once it is published
+            _materialized = true;
+
+            scheduleIdleCheck(_idleTimeout);
+
+            if (_log.isDebugEnabled()) {
+                _log.debug(
+                    "Built endpoint of application {} on first request",
+                    _properties.get("original.service.id"));
+            }
+        }
+    }
+
+    public void endRequest() {
+        _lastRequest = System.nanoTime();
+
+        _requests.decrementAndGet();
+    }
+
     public synchronized void addProvider(ServiceTuple<?> tuple) {
         _providers.add(tuple);
 
+        _pendingTriggers.add(TRIGGER_EXTENSION);
+
         try {
-            rewire();
+            if (!scheduleRewire()) {
+                rewire();
+            }
         }
         catch (Exception e) {
             removeProvider(tuple);
@@ -129,78 +350,98 @@ public class CxfJaxrsServiceRegistrator {
     public void enable() {
         _enabled = true;
 
-        try {
-            rewire();
+        synchronized (this) {
+            _pendingTriggers.add(TRIGGER_APPLICATION);
         }
-        catch (Exception e) {
-            ArrayList<ServiceTuple<?>> providers = new ArrayList<>();
-            ArrayList<ResourceProvider> services = new ArrayList<>();
 
-            for (ServiceTuple<?> provider : _providers) {
-                providers.add(provider);
+        rewireIsolatingFailures();
+    }
 
-                try {
-                    doRewire(providers, services);
-                }
-                catch (Exception ex) {
-                    providers.remove(provider);
-                    _erroredProviders.add(provider);
-                }
-            }
-            for (ResourceProvider service : _services) {
-                services.add(service);
+    /**
+     * Initializes the bus and builds the endpoint on {@code executor}. Changes
+     * arriving meanwhile are picked up by that build. A {@code null} executor
+     * deploys in the calling thread. A failed deployment completes {@link
+     * #getDeployment()} exceptionally and reports the application as errored,
+     * as a failure in the calling thread would.
+     */
+    public void enable(Executor executor) {
+        if (executor == null) {
+            enable();
 
-                try {
-                    doRewire(providers, services);
-                }
-                catch (Exception ex) {
-                    services.remove(service);
-                    _erroredServices.add(service);
-                }
-            }
+            return;
+        }
 
-            _enabled = false;
+        CompletableFuture<Void> deployment = new CompletableFuture<>();
 
-            for (ServiceTuple<?> erroredProvider : _erroredProviders) {
-                CachingServiceReference<?> cachingServiceReference =
-                    erroredProvider.getCachingServiceReference();
-                _providers.remove(erroredProvider);
-                _ariesJaxrsServiceRuntime.addErroredExtension(
-                    cachingServiceReference);
-                _serviceReferenceRegistry.unregister(cachingServiceReference);
-            }
-            for (ResourceProvider erroredService : _erroredServices) {
-                _services.remove(erroredService);
-                _ariesJaxrsServiceRuntime.addErroredEndpoint(
-                    ((ServiceReferenceResourceProvider)erroredService).
-                        getImmutableServiceReference());
-            }
+        synchronized (this) {
+            _pendingTriggers.add(TRIGGER_APPLICATION);
+        }
 
-            _enabled = true;
+        _deployment = deployment;
 
-            rewire();
+        _enabled = true;
+
+        try {
+            executor.execute(() -> deploy(deployment));
+        }
+        catch (RejectedExecutionException ree) {
+            deployment.completeExceptionally(ree);
         }
     }
 
     public void close() {
+        if (_bulkhead != null) {
+            _deploymentMetrics.removeGauge(
+                _applicationName, GAUGE_IN_FLIGHT_REQUESTS, _inFlightGauge);
+            _deploymentMetrics.removeGauge(
+                _applicationName, GAUGE_QUEUED_REQUESTS, _queuedGauge);
+        }
+
+        if (_streamLimit != null) {
+            _deploymentMetrics.removeGauge(
+                _applicationName, GAUGE_ACTIVE_STREAMS, _activeStreamsGauge);
+        }
+
+        if (_closed.compareAndSet(false, true)) {
+            _deploymentMetrics.removeApplication(_applicationName);
+        }
+
         if (!_enabled) {
             return;
         }
 
         _enabled = false;
 
-        if (_server != null) {
-            _server.destroy();
+        // a deployment that has not started yet is skipped, one in progress
+        // is waited for below, since it holds the monitor
+        _deployment.cancel(false);
+
+        if (_rewireScheduler != null) {
+            _rewireScheduler.close();
         }
 
-        if (_bus != null) {
-            _bus.shutdown(false);
+        synchronized (this) {
+            if (_idleCheck != null) {
+                _idleCheck.cancel(false);
+
+                _idleCheck = null;
+            }
+
+            if (_deploymentFailed) {
+                _ariesJaxrsServiceRuntime.removeErroredApplication(
+                    _applicationTuple.getCachingServiceReference());
+
+                _deploymentFailed = false;
+            }
+
+            _serverPublisher.close();
         }
     }
 
     public <T> T createEndpoint(Application app, Class<T> endpointType) {
         // final JAXRSServerFactoryBean bean = ResourceUtils.createApplication(app, false, false, false, null);
-        final JAXRSServerFactoryBean bean = new JAXRSServerFactoryBean();
+        final JAXRSServerFactoryBean bean = new JAXRSServerFactoryBean(
+            new LiveJAXRSServiceFactoryBean());
         Set<Object> singletons = app.getSingletons();
         if (!singletons.isEmpty() && singletons.stream().map(Object::getClass).count() < singletons.size()) {
             throw new IllegalArgumentException("More than one instance of the same singleton class is available: " + singletons);
@@ -285,17 +526,73 @@ public class CxfJaxrsServiceRegistrator {
         return cls.isAnnotationPresent(Provider.class) || SUPPORTED_EXTENSION_INTERFACES.values().stream().anyMatch(it -> it.isAssignableFrom(cls));
     }
 
+    /**
+     * Returns the bulkhead limiting the concurrent requests of the
+     * application, or {@code null} when they are not limited.
+     */
+    public Bulkhead getBulkhead() {
+        return _bulkhead;
+    }
+
     public Bus getBus() {
         return _bus;
     }
 
+    /**
+     * Returns the priority of the requests of the application when the
+     * whiteboard sheds load.
+     */
+    public AdmissionLimiter.Priority getRequestPriority() {
+        return _requestPriority;
+    }
+
+    /**
+     * Seconds a client is told to wait before retrying a rejected request.
+     */
+    public long getRetryAfter() {
+        return _retryAfter;
+    }
+
+    /**
+     * Returns the counter of the requests of the application the whiteboard
+     * shed.
+     */
+    public LongAdder getShedRequests() {
+        return _shedRequests;
+    }
+
+    /**
+     * Completes once the first build of the endpoint has finished, and
+     * completes exceptionally when it failed or the application left first.
+     */
+    public CompletableFuture<Void> getDeployment() {
+        return _deployment;
+    }
+
+    /**
+     * Milliseconds a request waits for the deployment before it is rejected.
+     */
+    public long getDeploymentTimeout() {
+        return _deploymentTimeout;
+    }
+
+    public DestinationRegistry getDestinationRegistry() {
+        return _destinationRegistry;
+    }
+
     public Iterable<Class<?>> getStaticResourceClasses() {
-        if (_jaxRsServerFactoryBean == null) {
+        return getStaticResourceClasses(_jaxRsServerFactoryBean);
+    }
+
+    private static List<Class<?>> getStaticResourceClasses(
+        JAXRSServerFactoryBean jaxRsServerFactoryBean) {
+
+        if (jaxRsServerFactoryBean == null) {
             return Collections.emptyList();
         }
 
         JAXRSServiceFactoryBean serviceFactory =
-            _jaxRsServerFactoryBean.getServiceFactory();
+            jaxRsServerFactoryBean.getServiceFactory();
 
         List<ClassResourceInfo> classResourceInfo =
             serviceFactory.getClassResourceInfo();
@@ -336,7 +633,19 @@ public class CxfJaxrsServiceRegistrator {
 
         _services.remove(resourceProvider);
 
-        rewire();
+        if (removeIncrementally(resourceProvider)) {
+            updateApplicationClasses(
+                _jaxRsServerFactoryBean, _applicationClasses);
+
+            _routingInterceptor.update(_server.getEndpoint());
+        }
+        else {
+            _pendingTriggers.add(TRIGGER_RESOURCE);
+
+            if (!scheduleRewire()) {
+                rewire();
+            }
+        }
     }
 
     public synchronized void removeProvider(ServiceTuple<?> tuple) {
@@ -347,7 +656,11 @@ public class CxfJaxrsServiceRegistrator {
 
         _providers.remove(tuple);
 
-        rewire();
+        _pendingTriggers.add(TRIGGER_EXTENSION);
+
+        if (!scheduleRewire()) {
+            rewire();
+        }
     }
 
     public synchronized void rewire() {
@@ -369,6 +682,167 @@ public class CxfJaxrsServiceRegistrator {
     private ArrayList<ServiceTuple<?>> _erroredProviders;
     private ArrayList<ResourceProvider> _erroredServices;
 
+    /**
+     * Adds the resource to the running endpoint without rebuilding it. Returns
+     * {@code false} when the endpoint has to be rebuilt instead.
+     */
+    private boolean addIncrementally(ResourceProvider resourceProvider) {
+        if (!_incrementalRewire || !_enabled || _server == null) {
+            return false;
+        }
+
+        if (resourceProvider instanceof
+            PrototypeServiceReferenceResourceProvider) {
+
+            PrototypeServiceReferenceResourceProvider provider =
+                (PrototypeServiceReferenceResourceProvider)resourceProvider;
+
+            if (!provider.isAvailable()) {
+                return true;
+            }
+        }
+
+        LiveJAXRSServiceFactoryBean serviceFactory =
+            (LiveJAXRSServiceFactoryBean)
+                _jaxRsServerFactoryBean.getServiceFactory();
+
+        ClassResourceInfo classResourceInfo =
+            serviceFactory.createRootResourceInfo(
+                resourceProvider.getResourceClass());
+
+        if (classResourceInfo == null) {
+            return false;
+        }
+
+        classResourceInfo.setResourceProvider(resourceProvider);
+
+        ComparableResourceComparator.assignRankOrdinals(_services);
+
+        Endpoint endpoint = _server.getEndpoint();
+
+        ServerProviderFactory serverProviderFactory =
+            (ServerProviderFactory)endpoint.get(
+                ServerProviderFactory.class.getName());
+
+        if (resourceProvider instanceof SingletonResourceProvider) {
+            ApplicationInfo applicationInfo = (ApplicationInfo)endpoint.get(
+                Application.class.getName());
+
+            InjectionUtils.injectContextProxiesAndApplication(
+                classResourceInfo, resourceProvider.getInstance(null),
+                applicationInfo.getProvider(), serverProviderFactory);
+
+            ((SingletonResourceProvider)resourceProvider).init(endpoint);
+        }
+
+        _applicationProperties.set(_properties);
+
+        try {
+            serverProviderFactory.applyDynamicFeatures(
+                Collections.singletonList(classResourceInfo));
+        }
+        finally {
+            _applicationProperties.remove();
+        }
+
+        serviceFactory.addRootResourceInfo(classResourceInfo);
+
+        endpoint.put(
+            RESOURCE_CONTEXT_PROVIDER,
+            createResourceContextProvider(serviceFactory));
+
+        return true;
+    }
+
+    private void deploy(CompletableFuture<Void> deployment) {
+        if (deployment.isDone()) {
+            return;
+        }
+
+        try {
+            // shared buses are initialized by the first application
+            synchronized (_bus) {
+                if (_bus instanceof ExtensionManagerBus &&
+                    _bus.getState() == Bus.BusState.INITIAL) {
+
+                    long start = System.nanoTime();
+
+                    ((ExtensionManagerBus)_bus).initialize();
+
+                    _deploymentMetrics.record(
+                        _applicationName, CREATE_BUS,
+                        System.nanoTime() - start);
+                }
+            }
+
+            // changes wait for the monitor and are only left to the
+            // deployment while it is not done
+            synchronized (this) {
+                rewireIsolatingFailures();
+
+                deployment.complete(null);
+            }
+        }
+        catch (Exception e) {
+            if (_log.isErrorEnabled()) {
+                _log.error(
+                    "Could not deploy application {}",
+                    _properties.get("original.service.id"), e);
+            }
+
+            synchronized (this) {
+                if (_enabled && (_ariesJaxrsServiceRuntime != null)) {
+                    _ariesJaxrsServiceRuntime.addErroredApplication(
+                        _applicationTuple.getCachingServiceReference());
+
+                    _deploymentFailed = true;
+                }
+
+                deployment.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Tears down the endpoint of a lazy application once it has not served
+     * any request for the idle timeout. The next request builds it again.
+     */
+    private synchronized void checkIdle() {
+        _idleCheck = null;
+
+        if (!_enabled || !_materialized) {
+            return;
+        }
+
+        long idle = TimeUnit.NANOSECONDS.toMillis(
+            System.nanoTime() - _lastRequest);
+
+        if (idle < _idleTimeout) {
+            scheduleIdleCheck(_idleTimeout - idle);
+
+            return;
+        }
+
+        _materialized = false;
+
+        // a request that saw the endpoint materialized has to be let through
+        if (_requests.get() > 0) {
+            _materialized = true;
+
+            scheduleIdleCheck(_idleTimeout);
+
+            return;
+        }
+
+        unpublish();
+
+        if (_log.isDebugEnabled()) {
+            _log.debug(
+                "Tore down endpoint of application {} idle for {} ms",
+                _properties.get("original.service.id"), idle);
+        }
+    }
+
     private synchronized void doRewire(
         Collection<ServiceTuple<?>> providers,
         Collection<ResourceProvider> services) {
@@ -377,6 +851,31 @@ public class CxfJaxrsServiceRegistrator {
             return;
         }
 
+        if (_lazyDeployment && !_materialized && !_materializing) {
+            return;
+        }
+
+        for (String trigger : _pendingTriggers) {
+            _deploymentMetrics.recordTrigger(_applicationName, trigger);
+        }
+
+        _pendingTriggers.clear();
+
+        long start = System.nanoTime();
+
+        try {
+            buildServer(providers, services);
+        }
+        finally {
+            _deploymentMetrics.record(
+                _applicationName, REWIRE, System.nanoTime() - start);
+        }
+    }
+
+    private void buildServer(
+        Collection<ServiceTuple<?>> providers,
+        Collection<ResourceProvider> services) {
+
         if (!_applicationTuple.isAvailable()) {
             _applicationTuple.dispose();
 
@@ -384,18 +883,27 @@ public class CxfJaxrsServiceRegistrator {
         }
 
         if (_server != null) {
-            _server.destroy();
+            // the running server keeps its instances until it is retired
+            List<Runnable> releases = new ArrayList<>();
 
-            _applicationTuple.refresh();
+            if (isRenewed(_applicationTuple)) {
+                releases.add(_applicationTuple.renew());
+            }
 
             for (ServiceTuple<?> provider : providers) {
-                provider.refresh();
+                if (isRenewed(provider)) {
+                    releases.add(provider.renew());
+                }
             }
+
+            _serverPublisher.release(releases);
         }
 
         Application application = _applicationTuple.getService();
 
         if (application == null) {
+            unpublish();
+
             return;
         }
 
@@ -403,30 +911,43 @@ public class CxfJaxrsServiceRegistrator {
             application.getSingletons().isEmpty() &&
             application.getClasses().isEmpty()) {
 
+            unpublish();
+
             return;
         }
 
-        _jaxRsServerFactoryBean = createEndpoint(
+        long start = System.nanoTime();
+
+        JAXRSServerFactoryBean jaxRsServerFactoryBean = createEndpoint(
             application, JAXRSServerFactoryBean.class);
 
-        _jaxRsServerFactoryBean.setInvoker(new PromiseAwareJAXRSInvoker());
-        _jaxRsServerFactoryBean.setBus(_bus);
+        long createEndpointNanos = System.nanoTime() - start;
+
+        jaxRsServerFactoryBean.setInvoker(
+            new PromiseAwareJAXRSInvoker(_invocationExecutor, _streamLimit));
+        jaxRsServerFactoryBean.setBus(_bus);
+        jaxRsServerFactoryBean.setDestinationFactory(
+            new HTTPTransportFactory(_destinationRegistry));
 
         _bus.setExtension(
-            context -> {
-                ConfigurableImpl<FeatureContext> configurable =
-                    new ConfigurableImpl<>(context, RuntimeType.SERVER);
+            _serverConfigurableFactory, ServerConfigurableFactory.class);
 
-                configurable.property(
-                    "osgi.jaxrs.application.serviceProperties", _properties);
+        jaxRsServerFactoryBean.setStart(false);
 
-                return configurable;
-            },
-            ServerConfigurableFactory.class);
+        List<org.apache.cxf.feature.Feature> features = new ArrayList<>();
 
-        _jaxRsServerFactoryBean.setStart(false);
+        Map<CachingServiceReference<?>, Integer> rankOrdinals =
+            ServiceReferenceProviderInfoComparator.getRankOrdinals(
+                providers.stream().map(
+                    ServiceTuple::getCachingServiceReference
+                ).collect(
+                    Collectors.toList()
+                ));
 
-        List<org.apache.cxf.feature.Feature> features = new ArrayList<>();
+        List<ServiceReferenceFilterProviderInfo<?>> bodyProviderInfos =
+            new ArrayList<>();
+        List<ServiceReferenceFilterProviderInfo<?>> filterProviderInfos =
+            new ArrayList<>();
 
         for (ServiceTuple<?> provider : providers) {
             CachingServiceReference<?> cachingServiceReference =
@@ -445,7 +966,7 @@ public class CxfJaxrsServiceRegistrator {
             if (service instanceof Feature ||
                 service instanceof DynamicFeature) {
 
-                _jaxRsServerFactoryBean.setProvider(service);
+                jaxRsServerFactoryBean.setProvider(service);
 
                 continue;
             }
@@ -470,33 +991,93 @@ public class CxfJaxrsServiceRegistrator {
                         __ -> AnnotationUtils.getBindingPriority(realClass))
                 );
 
-            _jaxRsServerFactoryBean.setProvider(
+            Set<String> filterNameBindings = getFilterNameBindings(
+                getBus(), service);
+
+            Map<Class<?>, Integer> bodyClassesWithPriorities = removeContracts(
+                classesWithPriorities, _BODY_CLASSES);
+
+            if (!bodyClassesWithPriorities.isEmpty()) {
+                bodyProviderInfos.add(
+                    new ServiceReferenceFilterProviderInfo<>(
+                        cachingServiceReference, realClass, realClass,
+                        service, getBus(), filterNameBindings, false,
+                        bodyClassesWithPriorities,
+                        rankOrdinals.get(cachingServiceReference)));
+            }
+
+            Map<Class<?>, Integer> filterClassesWithPriorities =
+                removeContracts(
+                    classesWithPriorities,
+                    AnnotationUtils.getClassAnnotation(
+                        realClass, PreMatching.class) == null ?
+                        _FILTER_CLASSES : _RESPONSE_FILTER_CLASSES);
+
+            if (!filterClassesWithPriorities.isEmpty()) {
+                filterProviderInfos.add(
+                    new ServiceReferenceFilterProviderInfo<>(
+                        cachingServiceReference, realClass, realClass,
+                        service, getBus(), filterNameBindings, false,
+                        filterClassesWithPriorities,
+                        rankOrdinals.get(cachingServiceReference)));
+            }
+
+            if (classesWithPriorities.isEmpty()) {
+                continue;
+            }
+
+            jaxRsServerFactoryBean.setProvider(
                 new ServiceReferenceFilterProviderInfo<>(
                     cachingServiceReference, realClass, realClass, service,
-                    getBus(), getFilterNameBindings(getBus(), service), false,
-                    classesWithPriorities));
+                    getBus(), filterNameBindings, false,
+                    classesWithPriorities,
+                    rankOrdinals.get(cachingServiceReference)));
+        }
+
+        FilterChains filterChains = new FilterChains(
+            getBus(), filterProviderInfos);
+
+        for (ServiceReferenceFilterProviderInfo<?> providerInfo :
+                filterChains.getProviderInfos()) {
+
+            jaxRsServerFactoryBean.setProvider(providerInfo);
         }
 
-        _jaxRsServerFactoryBean.setProvider(new SseEventSinkContextProvider());
-        _jaxRsServerFactoryBean.setProvider(new SseContextProvider());
-        _jaxRsServerFactoryBean.setProvider(new ContextProvider<ApplicationClasses>() {
+        MessageBodyProviderSelector messageBodyProviderSelector = null;
+
+        if (!bodyProviderInfos.isEmpty()) {
+            messageBodyProviderSelector = new MessageBodyProviderSelector(
+                getBus(), bodyProviderInfos,
+                _deploymentMetrics.getCounter(
+                    _applicationName, COUNTER_PROVIDER_CACHE_HIT),
+                _deploymentMetrics.getCounter(
+                    _applicationName, COUNTER_PROVIDER_CACHE_MISS));
+
+            jaxRsServerFactoryBean.setProvider(
+                messageBodyProviderSelector.getProviderInfo());
+        }
+
+        jaxRsServerFactoryBean.setProvider(new SseEventSinkContextProvider());
+        jaxRsServerFactoryBean.setProvider(new SseContextProvider());
+        // requests draining on a previous server keep seeing its classes
+        AtomicReference<ApplicationClasses> applicationClasses =
+            new AtomicReference<>(Collections::emptySet);
+
+        jaxRsServerFactoryBean.setProvider(new ContextProvider<ApplicationClasses>() {
             @Override
             public ApplicationClasses createContext(Message message) {
-                return () -> {
-                    return Stream.concat(
-                        StreamSupport.stream(getStaticResourceClasses().spliterator(), false),
-                        _services.stream().map(ResourceProvider::getResourceClass)
-                    ).collect(toSet());
-                };
+                return applicationClasses.get();
             }
         });
 
         if (!features.isEmpty()) {
-            features.addAll(_jaxRsServerFactoryBean.getFeatures());
+            features.addAll(jaxRsServerFactoryBean.getFeatures());
 
-            _jaxRsServerFactoryBean.setFeatures(features);
+            jaxRsServerFactoryBean.setFeatures(features);
         }
 
+        ComparableResourceComparator.assignRankOrdinals(services);
+
         for (ResourceProvider resourceProvider: services) {
             if (resourceProvider instanceof
                 PrototypeServiceReferenceResourceProvider) {
@@ -508,30 +1089,53 @@ public class CxfJaxrsServiceRegistrator {
                 }
             }
 
-            _jaxRsServerFactoryBean.setResourceProvider(resourceProvider);
+            jaxRsServerFactoryBean.setResourceProvider(resourceProvider);
         }
 
-        if (_jaxRsServerFactoryBean.getResourceClasses().isEmpty()) {
+        if (jaxRsServerFactoryBean.getResourceClasses().isEmpty()) {
+            unpublish();
+
             return;
         }
 
         ComparableResourceComparator comparableResourceComparator =
             new ComparableResourceComparator();
 
-        _jaxRsServerFactoryBean.setResourceComparator(
+        jaxRsServerFactoryBean.setResourceComparator(
             comparableResourceComparator);
 
         ProviderInfoClassComparator providerInfoClassComparator =
             new ProviderInfoClassComparator(Object.class);
 
-        _jaxRsServerFactoryBean.setProviderComparator(
+        jaxRsServerFactoryBean.setProviderComparator(
             new ServiceReferenceProviderInfoComparator(
                 providerInfoClassComparator)
         );
 
-        _server = _jaxRsServerFactoryBean.create();
+        RoutingInterceptor routingInterceptor = new RoutingInterceptor();
 
-        Endpoint endpoint = _server.getEndpoint();
+        jaxRsServerFactoryBean.getInInterceptors().add(routingInterceptor);
+        jaxRsServerFactoryBean.getInInterceptors().add(
+            routingInterceptor.getRestoreInterceptor());
+
+        Server server;
+
+        _applicationProperties.set(_properties);
+
+        start = System.nanoTime();
+
+        try {
+            server = jaxRsServerFactoryBean.create();
+        }
+        finally {
+            _applicationProperties.remove();
+
+            _deploymentMetrics.record(
+                _applicationName, CREATE_ENDPOINT,
+                createEndpointNanos + System.nanoTime() - start);
+        }
+
+        Endpoint endpoint = server.getEndpoint();
 
         ApplicationInfo applicationInfo = (ApplicationInfo)endpoint.get(
             Application.class.getName());
@@ -541,11 +1145,34 @@ public class CxfJaxrsServiceRegistrator {
         }});
 
         endpoint.put(
-            "org.apache.cxf.jaxrs.resource.context.provider",
+            RESOURCE_CONTEXT_PROVIDER,
             createResourceContextProvider(
-                _jaxRsServerFactoryBean.getServiceFactory()));
+                jaxRsServerFactoryBean.getServiceFactory()));
+
+        ServerProviderFactory serverProviderFactory =
+            (ServerProviderFactory)endpoint.get(
+                ServerProviderFactory.class.getName());
+
+        if (messageBodyProviderSelector != null) {
+            messageBodyProviderSelector.injectContextProxies(
+                serverProviderFactory);
+        }
+
+        filterChains.injectContextProxies(serverProviderFactory);
+        filterChains.index(
+            jaxRsServerFactoryBean.getServiceFactory().
+                getClassResourceInfo());
+
+        updateApplicationClasses(jaxRsServerFactoryBean, applicationClasses);
+
+        routingInterceptor.update(endpoint);
+
+        _serverPublisher.publish(server);
 
-        _server.start();
+        _applicationClasses = applicationClasses;
+        _server = server;
+        _jaxRsServerFactoryBean = jaxRsServerFactoryBean;
+        _routingInterceptor = routingInterceptor;
     }
 
     private ResourceContextProvider createResourceContextProvider(
@@ -573,16 +1200,360 @@ public class CxfJaxrsServiceRegistrator {
         return map::get;
     }
 
+    private synchronized void rewireIsolatingFailures() {
+        try {
+            rewire();
+        }
+        catch (Exception e) {
+            ArrayList<ServiceTuple<?>> providers = new ArrayList<>();
+            ArrayList<ResourceProvider> services = new ArrayList<>();
+
+            List<ServiceTuple<?>> erroredProviders = isolateFailures(
+                new ArrayList<>(_providers), providers,
+                ps -> tryRewire(ps, Collections.emptyList()));
+
+            List<ResourceProvider> erroredServices = isolateFailures(
+                new ArrayList<>(_services), services,
+                ss -> tryRewire(providers, ss));
+
+            _erroredProviders.addAll(erroredProviders);
+            _erroredServices.addAll(erroredServices);
+
+            _enabled = false;
+
+            for (ServiceTuple<?> erroredProvider : erroredProviders) {
+                CachingServiceReference<?> cachingServiceReference =
+                    erroredProvider.getCachingServiceReference();
+                _providers.remove(erroredProvider);
+                _ariesJaxrsServiceRuntime.addErroredExtension(
+                    cachingServiceReference);
+                _serviceReferenceRegistry.unregister(cachingServiceReference);
+            }
+            for (ResourceProvider erroredService : erroredServices) {
+                _services.remove(erroredService);
+                _ariesJaxrsServiceRuntime.addErroredEndpoint(
+                    ((ServiceReferenceResourceProvider)erroredService).
+                        getImmutableServiceReference());
+            }
+
+            _enabled = true;
+
+            rewire();
+        }
+    }
+
+    /**
+     * Removes the resource from the running endpoint without rebuilding it.
+     * Returns {@code false} when the endpoint has to be rebuilt instead.
+     */
+    private boolean removeIncrementally(ResourceProvider resourceProvider) {
+        if (!_incrementalRewire || !_enabled || _server == null ||
+            _services.isEmpty()) {
+
+            return false;
+        }
+
+        LiveJAXRSServiceFactoryBean serviceFactory =
+            (LiveJAXRSServiceFactoryBean)
+                _jaxRsServerFactoryBean.getServiceFactory();
+
+        if (serviceFactory.removeRootResourceInfo(resourceProvider) != null) {
+            _server.getEndpoint().put(
+                RESOURCE_CONTEXT_PROVIDER,
+                createResourceContextProvider(serviceFactory));
+        }
+
+        return true;
+    }
+
+    /**
+     * Instances are kept across rewires, since a changed registration arrives
+     * as a new tuple, unless the service asks for a fresh one each time or
+     * its instance is missing or no longer available.
+     */
+    private static boolean isRenewed(ServiceTuple<?> tuple) {
+        if (tuple.getService() == null || !tuple.isAvailable()) {
+            return true;
+        }
+
+        return getBoolean(
+            tuple.getCachingServiceReference().getProperty(RENEW_ON_REWIRE),
+            false);
+    }
+
+    private void unpublish() {
+        _serverPublisher.unpublish();
+
+        _server = null;
+        _jaxRsServerFactoryBean = null;
+    }
+
+    private boolean tryRewire(
+        Collection<ServiceTuple<?>> providers,
+        Collection<ResourceProvider> services) {
+
+        try {
+            doRewire(providers, services);
+
+            return true;
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Takes the snapshot that {@link ApplicationClasses} injections of the
+     * endpoint return until the next change.
+     */
+    private void updateApplicationClasses(
+        JAXRSServerFactoryBean jaxRsServerFactoryBean,
+        AtomicReference<ApplicationClasses> applicationClasses) {
+
+        Set<Class<?>> classes = new HashSet<>(
+            getStaticResourceClasses(jaxRsServerFactoryBean));
+
+        for (ResourceProvider resourceProvider : _services) {
+            classes.add(resourceProvider.getResourceClass());
+        }
+
+        Set<Class<?>> snapshot = Collections.unmodifiableSet(classes);
+
+        applicationClasses.set(() -> snapshot);
+    }
+
+    private void scheduleIdleCheck(long delay) {
+        if (_idleTimeout <= 0 || _scheduledExecutorService == null) {
+            return;
+        }
+
+        _idleCheck = _scheduledExecutorService.schedule(
+            this::checkIdle, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean scheduleRewire() {
+        if (!_enabled) {
+            return false;
+        }
+
+        if (!_deployment.isDone()) {
+            return true;
+        }
+
+        if (_rewireScheduler == null) {
+            return false;
+        }
+
+        _rewireScheduler.schedule();
+
+        return true;
+    }
+
+    private void scheduledRewire(int changes) {
+        if (!_enabled) {
+            return;
+        }
+
+        _deploymentMetrics.getCounter(
+            _applicationName, COUNTER_DEBOUNCED_REWIRES).increment();
+        _deploymentMetrics.getCounter(
+            _applicationName, COUNTER_DEBOUNCED_CHANGES).add(changes);
+
+        try {
+            rewireIsolatingFailures();
+
+            if (_log.isDebugEnabled()) {
+                _log.debug(
+                    "Rewired application {} absorbing {} changes",
+                    _properties.get("original.service.id"), changes);
+            }
+        }
+        catch (Exception e) {
+            if (_log.isErrorEnabled()) {
+                _log.error(
+                    "Could not rewire application {} after {} changes",
+                    _properties.get("original.service.id"), changes, e);
+            }
+        }
+    }
+
+    private static final String CONCURRENCY_LIMIT = "concurrency.limit";
+
+    private static final String CONCURRENCY_QUEUE_SIZE =
+        "concurrency.queue.size";
+
+    private static final String CONCURRENCY_QUEUE_TIMEOUT =
+        "concurrency.queue.timeout";
+
+    private static final String CONCURRENCY_RETRY_AFTER =
+        "concurrency.retry.after";
+
+    private static final String DEPLOYMENT_TIMEOUT = "deployment.timeout";
+
+    private static final String IDLE_TIMEOUT = "idle.timeout";
+
+    private static final String INCREMENTAL_REWIRE = "incremental.rewire";
+
+    private static final String INVOCATION_EXECUTOR = "invocation.executor";
+
+    private static final String INVOCATION_EXECUTOR_VIRTUAL = "virtual";
+
+    private static final String LAZY_DEPLOYMENT = "lazy.deployment";
+
+    private static final String PUBLISHER_MAX_STREAMS =
+        "publisher.max.streams";
+
+    private static final String RENEW_ON_REWIRE =
+        "org.apache.aries.jax.rs.whiteboard.renew.on.rewire";
+
+    private static final String REQUEST_PRIORITY = "request.priority";
+
+    private static final String REWIRE_MAX_DELAY = "rewire.max.delay";
+
+    private static final String REWIRE_QUIET_PERIOD = "rewire.quiet.period";
+
+    private static final Class<?>[] _BODY_CLASSES =
+        {MessageBodyReader.class, MessageBodyWriter.class};
+
+    private static final long _DEFAULT_CONCURRENCY_QUEUE_TIMEOUT = 1000;
+
+    private static final long _DEFAULT_CONCURRENCY_RETRY_AFTER = 1;
+
+    private static final long _DEFAULT_DEPLOYMENT_TIMEOUT = 10000;
+
+    private static final long _DEFAULT_PUBLISHER_MAX_STREAMS = 100;
+
+    private static final long _DEFAULT_REWIRE_MAX_DELAY = 1000;
+
+    private static final Class<?>[] _FILTER_CLASSES =
+        {ContainerRequestFilter.class, ContainerResponseFilter.class};
+
+    private static final Class<?>[] _RESPONSE_FILTER_CLASSES =
+        {ContainerResponseFilter.class};
+
+    private static final Logger _log = LoggerFactory.getLogger(
+        CxfJaxrsServiceRegistrator.class);
+
+    private static final String RESOURCE_CONTEXT_PROVIDER =
+        "org.apache.cxf.jaxrs.resource.context.provider";
+
+    /**
+     * Buses may be shared, so the factory hands feature contexts the
+     * properties of the application being built in the current thread.
+     */
+    private static final ThreadLocal<Map<String, Object>>
+        _applicationProperties = new ThreadLocal<>();
+
+    private static final ServerConfigurableFactory _serverConfigurableFactory =
+        context -> {
+            ConfigurableImpl<FeatureContext> configurable =
+                new ConfigurableImpl<>(context, RuntimeType.SERVER);
+
+            configurable.property(
+                "osgi.jaxrs.application.serviceProperties",
+                _applicationProperties.get());
+
+            return configurable;
+        };
+
+    private final LongSupplier _activeStreamsGauge;
+    private AtomicReference<ApplicationClasses> _applicationClasses;
+    private final String _applicationName;
     private final ServiceTuple<Application> _applicationTuple;
     private final Bus _bus;
+    private final Bulkhead _bulkhead;
+    private final AtomicBoolean _closed = new AtomicBoolean();
+    private final DestinationRegistry _destinationRegistry =
+        new DestinationRegistryImpl();
     private final Collection<ServiceTuple<?>> _providers;
     private final Collection<ResourceProvider> _services = new ArrayList<>();
+    private volatile CompletableFuture<Void> _deployment =
+        CompletableFuture.completedFuture(null);
+    private boolean _deploymentFailed;
+    private final DeploymentMetricsImpl _deploymentMetrics;
+    private final long _deploymentTimeout;
     private volatile boolean _enabled = false;
+    private ScheduledFuture<?> _idleCheck;
+    private final long _idleTimeout;
+    private final boolean _incrementalRewire;
+    private final Executor _invocationExecutor;
+    private final LongSupplier _inFlightGauge;
+    private volatile long _lastRequest;
+    private final boolean _lazyDeployment;
+    private volatile boolean _materialized;
+    private boolean _materializing;
+    private final Set<String> _pendingTriggers = new TreeSet<>();
+    private final LongSupplier _queuedGauge;
+    private final AtomicInteger _requests = new AtomicInteger();
+    private final AdmissionLimiter.Priority _requestPriority;
+    private final long _retryAfter;
+    private final RewireScheduler _rewireScheduler;
+    private final ScheduledExecutorService _scheduledExecutorService;
     private JAXRSServerFactoryBean _jaxRsServerFactoryBean;
     private Map<String, Object> _properties;
     private AriesJaxrsServiceRuntime _ariesJaxrsServiceRuntime;
     private ServiceReferenceRegistry _serviceReferenceRegistry;
+    private RoutingInterceptor _routingInterceptor;
     private Server _server;
+    private final ServerPublisher _serverPublisher = new ServerPublisher();
+    private final LongAdder _shedRequests;
+    private final StreamLimit _streamLimit;
+
+    /**
+     * Splits {@code candidates} into those that can be wired together with
+     * the already {@code accepted} ones, which are added to {@code accepted},
+     * and those that make {@code rewires} fail, which are returned. Failing
+     * groups are bisected, so {@code k} failures among {@code n} candidates
+     * take {@code O(k log n)} attempts instead of {@code n}.
+     */
+    static <T> List<T> isolateFailures(
+        List<T> candidates, List<T> accepted, Predicate<List<T>> rewires) {
+
+        List<T> errored = new ArrayList<>();
+
+        isolateFailures(candidates, false, accepted, rewires, errored);
+
+        return errored;
+    }
+
+    private static <T> void isolateFailures(
+        List<T> candidates, boolean failing, List<T> accepted,
+        Predicate<List<T>> rewires, List<T> errored) {
+
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        if (!failing) {
+            List<T> attempt = new ArrayList<>(accepted);
+
+            attempt.addAll(candidates);
+
+            if (rewires.test(attempt)) {
+                accepted.addAll(candidates);
+
+                return;
+            }
+        }
+
+        if (candidates.size() == 1) {
+            errored.add(candidates.get(0));
+
+            return;
+        }
+
+        int half = candidates.size() / 2;
+
+        int erroredBefore = errored.size();
+
+        isolateFailures(
+            candidates.subList(0, half), false, accepted, rewires, errored);
+
+        // when the first half wires cleanly the failure must be in the second
+        isolateFailures(
+            candidates.subList(half, candidates.size()),
+            errored.size() == erroredBefore, accepted, rewires, errored);
+    }
 
     private static Set<String> getFilterNameBindings(
         Bus bus, Object provider) {
@@ -595,4 +1566,20 @@ public class CxfJaxrsServiceRegistrator {
         return names;
     }
 
+    private static Map<Class<?>, Integer> removeContracts(
+        Map<Class<?>, Integer> classesWithPriorities, Class<?>[] contracts) {
+
+        Map<Class<?>, Integer> removed = new HashMap<>();
+
+        for (Class<?> contract : contracts) {
+            Integer priority = classesWithPriorities.remove(contract);
+
+            if (priority != null) {
+                removed.put(contract, priority);
+            }
+        }
+
+        return removed;
+    }
+
 }
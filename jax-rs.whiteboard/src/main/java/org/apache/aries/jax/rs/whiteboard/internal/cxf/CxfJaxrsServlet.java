@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.cxf.message.Message;
+import org.apache.cxf.transport.http.AbstractHTTPDestination;
+import org.apache.cxf.transport.servlet.CXFNonSpringServlet;
+
+/**
+ * Serves an application whose bus may still be initializing in another
+ * thread. The servlet is initialized once the application is deployed, at
+ * the latest when the first request arrives, so registering it never waits
+ * for the deployment. Requests arriving before the deployment are rejected
+ * once it fails or takes longer than the deployment timeout. Requests are
+ * reported to the registrator, which builds the endpoint of lazy applications
+ * on demand. Requests over the concurrency limit of the application, or shed
+ * by the whiteboard, are rejected before they reach CXF. The whiteboard
+ * adapts its limit to the time a request takes from reaching CXF until it
+ * completes, suspended requests included. The wait for the deployment does
+ * not count as latency, and requests marked as streaming their response
+ * leave the admission control of the whiteboard once they are marked.
+ */
+public class CxfJaxrsServlet extends CXFNonSpringServlet {
+
+    /**
+     * Marks the request of {@code message} as streaming its response, such as
+     * server-sent events, for as long as the client listens. Its duration
+     * tells nothing about the latency of the application, so the request
+     * leaves the admission control of the whiteboard at once.
+     */
+    public static void setStreaming(Message message) {
+        Object request = message.get(AbstractHTTPDestination.HTTP_REQUEST);
+
+        if (!(request instanceof ServletRequest)) {
+            return;
+        }
+
+        Object streaming = ((ServletRequest)request).getAttribute(STREAMING);
+
+        if (streaming instanceof Runnable) {
+            ((Runnable)streaming).run();
+        }
+    }
+
+    /**
+     * Requests are also admitted by {@code admissionLimiter}, shared by the
+     * applications of the whiteboard, unless it is {@code null}.
+     */
+    public CxfJaxrsServlet(
+        CxfJaxrsServiceRegistrator registrator,
+        AdmissionLimiter admissionLimiter) {
+
+        super(registrator.getDestinationRegistry(), registrator.getBus());
+
+        _admissionLimiter = admissionLimiter;
+        _registrator = registrator;
+        _bulkhead = registrator.getBulkhead();
+        _deployment = registrator.getDeployment();
+    }
+
+    @Override
+    public void destroy() {
+        if (_initialized) {
+            super.destroy();
+        }
+    }
+
+    @Override
+    public void destroyBus() {
+    }
+
+    @Override
+    public ServletConfig getServletConfig() {
+        return _servletConfig;
+    }
+
+    @Override
+    public void init(ServletConfig servletConfig) throws ServletException {
+        _servletConfig = servletConfig;
+
+        if (_deployment.isDone()) {
+            initialize();
+        }
+    }
+
+    @Override
+    public void service(ServletRequest request, ServletResponse response)
+        throws ServletException, IOException {
+
+        // resumed requests were admitted when they were first dispatched
+        if ((_bulkhead == null && _admissionLimiter == null) ||
+            request.getDispatcherType() == DispatcherType.ASYNC) {
+
+            serve(request, response);
+
+            return;
+        }
+
+        if ((_bulkhead != null) && !_bulkhead.acquire()) {
+            reject(response);
+
+            return;
+        }
+
+        if ((_admissionLimiter != null) &&
+            !_admissionLimiter.acquire(_registrator.getRequestPriority())) {
+
+            if (_bulkhead != null) {
+                _bulkhead.release();
+            }
+
+            _registrator.getShedRequests().increment();
+
+            reject(response);
+
+            return;
+        }
+
+        Completion completion = new Completion();
+
+        request.setAttribute(STREAMING, (Runnable)completion::stream);
+
+        try {
+            completion._start = serve(request, response);
+        }
+        finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(completion);
+            }
+            else {
+                completion.run();
+            }
+        }
+    }
+
+    private void reject(ServletResponse response) throws IOException {
+        HttpServletResponse httpServletResponse = (HttpServletResponse)response;
+
+        httpServletResponse.setHeader(
+            "Retry-After", String.valueOf(_registrator.getRetryAfter()));
+        httpServletResponse.sendError(
+            HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} the request reached CXF at, after
+     * the wait for the deployment and the build of a lazy endpoint, or -1
+     * when the request was rejected.
+     */
+    private long serve(ServletRequest request, ServletResponse response)
+        throws ServletException, IOException {
+
+        if (!_initialized) {
+            try {
+                _deployment.get(
+                    _registrator.getDeploymentTimeout(),
+                    TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+
+                reject(response);
+
+                return -1;
+            }
+            catch (CancellationException | ExecutionException |
+                   TimeoutException e) {
+
+                reject(response);
+
+                return -1;
+            }
+
+            initialize();
+        }
+
+        try {
+            _registrator.beginRequest();
+
+            long start = System.nanoTime();
+
+            super.service(request, response);
+
+            return start;
+        }
+        finally {
+            _registrator.endRequest();
+        }
+    }
+
+    private synchronized void initialize() throws ServletException {
+        if (_initialized) {
+            return;
+        }
+
+        super.init(_servletConfig);
+
+        _initialized = true;
+    }
+
+    private static final String STREAMING =
+        CxfJaxrsServlet.class.getName() + ".streaming";
+
+    private static final long serialVersionUID = 1L;
+
+    private final AdmissionLimiter _admissionLimiter;
+    private final Bulkhead _bulkhead;
+    private final CompletableFuture<Void> _deployment;
+    private volatile boolean _initialized;
+    private final CxfJaxrsServiceRegistrator _registrator;
+    private volatile ServletConfig _servletConfig;
+
+    /**
+     * Ends the admission of a request once it is served, or once it completes
+     * when CXF suspended it. A request streaming its response leaves the
+     * admission control of the whiteboard as soon as it is marked, and only
+     * the concurrency limit of its application keeps counting it.
+     */
+    private class Completion implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        void run() {
+            long start = _start;
+
+            endAdmission(start < 0 ? -1 : System.nanoTime() - start);
+
+            if (_done.compareAndSet(false, true) && (_bulkhead != null)) {
+                _bulkhead.release();
+            }
+        }
+
+        void stream() {
+            endAdmission(-1);
+        }
+
+        private void endAdmission(long nanos) {
+            if (_admitted.compareAndSet(false, true) &&
+                (_admissionLimiter != null)) {
+
+                _admissionLimiter.release(nanos);
+            }
+        }
+
+        private final AtomicBoolean _admitted = new AtomicBoolean();
+        private final AtomicBoolean _done = new AtomicBoolean();
+        private volatile long _start = -1;
+
+    }
+
+}
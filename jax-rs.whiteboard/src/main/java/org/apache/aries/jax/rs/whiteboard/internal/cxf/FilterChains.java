@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import static org.apache.cxf.jaxrs.provider.ProviderFactory.DEFAULT_FILTER_NAME_BINDING;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.Response;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.jaxrs.model.ProviderInfo;
+import org.apache.cxf.jaxrs.provider.ServerProviderFactory;
+import org.apache.cxf.jaxrs.utils.InjectionUtils;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+
+/**
+ * Runs the post-matching request filters and the response filters registered
+ * as whiteboard extensions of an application. CXF works out the name-bound
+ * filters of the matched resource method on every request, so the extensions
+ * are not handed to CXF as filters. Instead there is one chain filter per
+ * priority, which CXF sorts like the filters it stands for, and every chain
+ * keeps the filters of its priority that apply to each resource method in
+ * an immutable list. The lists are computed when the endpoint is built, or
+ * on first use for resource methods added later.
+ */
+public class FilterChains {
+
+    public FilterChains(
+        Bus bus, List<ServiceReferenceFilterProviderInfo<?>> providerInfos) {
+
+        Map<Integer, List<ProviderInfo<?>>> requestFilters = new TreeMap<>();
+        Map<Integer, List<ProviderInfo<?>>> responseFilters = new TreeMap<>();
+
+        List<ServiceReferenceFilterProviderInfo<?>> sorted = new ArrayList<>(
+            providerInfos);
+
+        sorted.sort(
+            (pi1, pi2) -> Integer.compare(
+                pi1.getRankOrdinal(), pi2.getRankOrdinal()));
+
+        for (ServiceReferenceFilterProviderInfo<?> providerInfo : sorted) {
+            if (providerInfo.getSupportedContracts().contains(
+                    ContainerRequestFilter.class)) {
+
+                requestFilters.computeIfAbsent(
+                    providerInfo.getPriority(ContainerRequestFilter.class),
+                    __ -> new ArrayList<>()
+                ).add(providerInfo);
+            }
+
+            if (providerInfo.getSupportedContracts().contains(
+                    ContainerResponseFilter.class)) {
+
+                responseFilters.computeIfAbsent(
+                    providerInfo.getPriority(ContainerResponseFilter.class),
+                    __ -> new ArrayList<>()
+                ).add(providerInfo);
+            }
+        }
+
+        requestFilters.forEach(
+            (priority, filters) -> _chains.add(
+                new RequestFilterChain(bus, priority, filters)));
+        responseFilters.forEach(
+            (priority, filters) -> _chains.add(
+                new ResponseFilterChain(bus, priority, filters)));
+    }
+
+    /**
+     * Returns the filters implementing {@code contract} that apply to
+     * {@code operationResourceInfo}, in the order they run. Response filters
+     * run from the highest priority down.
+     */
+    public List<Object> getFilters(
+        Class<?> contract, OperationResourceInfo operationResourceInfo) {
+
+        List<Chain<?>> chains = new ArrayList<>();
+
+        for (Chain<?> chain : _chains) {
+            if (chain._contract == contract) {
+                chains.add(chain);
+            }
+        }
+
+        if (contract == ContainerResponseFilter.class) {
+            Collections.reverse(chains);
+        }
+
+        List<Object> filters = new ArrayList<>();
+
+        for (Chain<?> chain : chains) {
+            for (ProviderInfo<?> providerInfo :
+                    chain.getFilters(operationResourceInfo)) {
+
+                filters.add(providerInfo.getProvider());
+            }
+        }
+
+        return filters;
+    }
+
+    /**
+     * Returns the provider infos to register the chains with, one per
+     * priority of the request and of the response filters.
+     */
+    public List<ServiceReferenceFilterProviderInfo<?>> getProviderInfos() {
+        List<ServiceReferenceFilterProviderInfo<?>> providerInfos =
+            new ArrayList<>();
+
+        for (Chain<?> chain : _chains) {
+            providerInfos.add(chain._providerInfo);
+        }
+
+        return providerInfos;
+    }
+
+    /**
+     * Computes the filters of every resource method reachable from
+     * {@code classResourceInfos}.
+     */
+    public void index(Collection<ClassResourceInfo> classResourceInfos) {
+        Set<ClassResourceInfo> visited = Collections.newSetFromMap(
+            new IdentityHashMap<>());
+
+        List<ClassResourceInfo> pending = new ArrayList<>(classResourceInfos);
+
+        while (!pending.isEmpty()) {
+            ClassResourceInfo classResourceInfo = pending.remove(
+                pending.size() - 1);
+
+            if (!visited.add(classResourceInfo)) {
+                continue;
+            }
+
+            for (OperationResourceInfo operationResourceInfo :
+                    classResourceInfo.getMethodDispatcher().
+                        getOperationResourceInfos()) {
+
+                for (Chain<?> chain : _chains) {
+                    chain.getFilters(operationResourceInfo);
+                }
+            }
+
+            pending.addAll(classResourceInfo.getSubResources());
+        }
+    }
+
+    /**
+     * Injects the context proxies of the filters behind the chains, as CXF
+     * does for the providers it is handed.
+     */
+    public void injectContextProxies(
+        ServerProviderFactory serverProviderFactory) {
+
+        for (Chain<?> chain : _chains) {
+            for (ProviderInfo<?> providerInfo : chain._filters) {
+                if (providerInfo.contextsAvailable()) {
+                    InjectionUtils.injectContextProxiesAndApplication(
+                        providerInfo, providerInfo.getProvider(), null,
+                        serverProviderFactory);
+                }
+            }
+        }
+    }
+
+    private final List<Chain<?>> _chains = new ArrayList<>();
+
+    private abstract static class Chain<T> {
+
+        Chain(
+            Bus bus, Class<T> contract, int priority,
+            List<ProviderInfo<?>> filters) {
+
+            _contract = contract;
+            _filters = filters;
+
+            _providerInfo = new ServiceReferenceFilterProviderInfo<Object>(
+                null, getClass(), getClass(), this, bus,
+                Collections.singleton(DEFAULT_FILTER_NAME_BINDING), false,
+                Collections.singletonMap(contract, priority), -1) {
+
+                @Override
+                public void clearThreadLocalProxies() {
+                    super.clearThreadLocalProxies();
+
+                    for (ProviderInfo<?> providerInfo : _filters) {
+                        providerInfo.clearThreadLocalProxies();
+                    }
+                }
+
+                @Override
+                public boolean contextsAvailable() {
+                    return true;
+                }
+
+            };
+
+            _unmatchedFilters = createFilters(Collections.emptySet());
+        }
+
+        List<ProviderInfo<T>> getFilters(
+            OperationResourceInfo operationResourceInfo) {
+
+            if (operationResourceInfo == null) {
+                return _unmatchedFilters;
+            }
+
+            List<ProviderInfo<T>> filters = _operationFilters.get(
+                operationResourceInfo);
+
+            if (filters == null) {
+                filters = _operationFilters.computeIfAbsent(
+                    operationResourceInfo,
+                    ori -> createFilters(ori.getNameBindings()));
+            }
+
+            return filters;
+        }
+
+        List<ProviderInfo<T>> getFilters(Message message) {
+            return getFilters(
+                message.getExchange().get(OperationResourceInfo.class));
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<ProviderInfo<T>> createFilters(Set<String> nameBindings) {
+            List<ProviderInfo<T>> filters = new ArrayList<>();
+
+            for (ProviderInfo<?> providerInfo : _filters) {
+                Set<String> filterNameBindings = new HashSet<>(
+                    ((ServiceReferenceFilterProviderInfo<?>)providerInfo).
+                        getNameBindings());
+
+                filterNameBindings.remove(DEFAULT_FILTER_NAME_BINDING);
+
+                if (nameBindings.containsAll(filterNameBindings)) {
+                    filters.add((ProviderInfo<T>)providerInfo);
+                }
+            }
+
+            return Collections.unmodifiableList(filters);
+        }
+
+        private final Class<T> _contract;
+        private final List<ProviderInfo<?>> _filters;
+        private final Map<OperationResourceInfo, List<ProviderInfo<T>>>
+            _operationFilters = new ConcurrentHashMap<>();
+        private final ServiceReferenceFilterProviderInfo<Object> _providerInfo;
+        private final List<ProviderInfo<T>> _unmatchedFilters;
+
+    }
+
+    private static class RequestFilterChain
+        extends Chain<ContainerRequestFilter>
+        implements ContainerRequestFilter {
+
+        RequestFilterChain(
+            Bus bus, int priority, List<ProviderInfo<?>> filters) {
+
+            super(bus, ContainerRequestFilter.class, priority, filters);
+        }
+
+        @Override
+        public void filter(ContainerRequestContext requestContext)
+            throws IOException {
+
+            Message message = PhaseInterceptorChain.getCurrentMessage();
+
+            for (ProviderInfo<ContainerRequestFilter> providerInfo :
+                    getFilters(message)) {
+
+                InjectionUtils.injectContexts(
+                    providerInfo.getProvider(), providerInfo, message);
+
+                providerInfo.getProvider().filter(requestContext);
+
+                if (message.getExchange().get(Response.class) != null) {
+                    return;
+                }
+            }
+        }
+
+    }
+
+    private static class ResponseFilterChain
+        extends Chain<ContainerResponseFilter>
+        implements ContainerResponseFilter {
+
+        ResponseFilterChain(
+            Bus bus, int priority, List<ProviderInfo<?>> filters) {
+
+            super(bus, ContainerResponseFilter.class, priority, filters);
+        }
+
+        @Override
+        public void filter(
+                ContainerRequestContext requestContext,
+                ContainerResponseContext responseContext)
+            throws IOException {
+
+            Message message = PhaseInterceptorChain.getCurrentMessage();
+
+            for (ProviderInfo<ContainerResponseFilter> providerInfo :
+                    getFilters(message)) {
+
+                InjectionUtils.injectContexts(
+                    providerInfo.getProvider(), providerInfo, message);
+
+                providerInfo.getProvider().filter(
+                    requestContext, responseContext);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.cxf.jaxrs.JAXRSServiceFactoryBean;
+import org.apache.cxf.jaxrs.lifecycle.ResourceProvider;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.utils.ResourceUtils;
+
+/**
+ * Service factory bean whose class resource infos live in a copy on write
+ * list. The {@link org.apache.cxf.jaxrs.JAXRSServiceImpl} created from it
+ * shares that list, so root resources can be added to or removed from a
+ * started endpoint while other threads are selecting resources from it.
+ */
+public class LiveJAXRSServiceFactoryBean extends JAXRSServiceFactoryBean {
+
+    public LiveJAXRSServiceFactoryBean() {
+        classResourceInfos = new CopyOnWriteArrayList<>();
+    }
+
+    public void addRootResourceInfo(ClassResourceInfo classResourceInfo) {
+        classResourceInfos.add(classResourceInfo);
+    }
+
+    public ClassResourceInfo createRootResourceInfo(Class<?> resourceClass) {
+        return ResourceUtils.createClassResourceInfo(
+            resourceClass, resourceClass, true, _enableStatic, getBus());
+    }
+
+    public ClassResourceInfo removeRootResourceInfo(
+        ResourceProvider resourceProvider) {
+
+        for (ClassResourceInfo classResourceInfo : classResourceInfos) {
+            if (classResourceInfo.getResourceProvider() == resourceProvider) {
+                classResourceInfos.remove(classResourceInfo);
+
+                return classResourceInfo;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void setEnableStaticResolution(boolean staticResolution) {
+        super.setEnableStaticResolution(staticResolution);
+
+        _enableStatic = staticResolution;
+    }
+
+    private boolean _enableStatic;
+
+}
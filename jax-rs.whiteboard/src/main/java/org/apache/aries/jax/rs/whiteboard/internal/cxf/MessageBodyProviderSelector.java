@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.jaxrs.model.ProviderInfo;
+import org.apache.cxf.jaxrs.provider.ProviderFactory.ProviderInfoClassComparator;
+import org.apache.cxf.jaxrs.provider.ServerProviderFactory;
+import org.apache.cxf.jaxrs.utils.InjectionUtils;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+
+/**
+ * Stands in front of the message body readers and writers registered as
+ * whiteboard extensions of an application. CXF asks every reader or writer
+ * in turn whether it can handle an entity, so the extensions are not handed
+ * to the endpoint as readers or writers. Instead they are kept in a provider
+ * factory of their own, which makes the choice as CXF does, and this
+ * selector remembers which one was chosen for the raw type, generic type,
+ * media type and annotations of the entity. A selector lives as long as the
+ * endpoint it was created for, so the choices are dropped on every rebuild.
+ * When no extension can handle an entity CXF carries on with the readers and
+ * writers of the application and its own.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class MessageBodyProviderSelector
+    implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+
+    public MessageBodyProviderSelector(
+        Bus bus, List<ServiceReferenceFilterProviderInfo<?>> providerInfos,
+        LongAdder hits, LongAdder misses) {
+
+        _bus = bus;
+        _hits = hits;
+        _misses = misses;
+
+        for (ServiceReferenceFilterProviderInfo<?> providerInfo :
+                providerInfos) {
+
+            _providerInfos.put(providerInfo.getProvider(), providerInfo);
+        }
+
+        _providerFactory = ServerProviderFactory.createInstance(bus);
+
+        _providerFactory.setProviderComparator(
+            new ServiceReferenceProviderInfoComparator(
+                new ProviderInfoClassComparator(Object.class)));
+        _providerFactory.setUserProviders(providerInfos);
+    }
+
+    /**
+     * Returns the provider info to register the selector with, ahead of
+     * every whiteboard extension. It takes care of the thread local context
+     * proxies of the extensions behind the selector.
+     */
+    public ServiceReferenceFilterProviderInfo<MessageBodyProviderSelector>
+        getProviderInfo() {
+
+        Map<Class<?>, Integer> contracts = new HashMap<>();
+
+        contracts.put(MessageBodyReader.class, Priorities.USER);
+        contracts.put(MessageBodyWriter.class, Priorities.USER);
+
+        return new ServiceReferenceFilterProviderInfo<
+            MessageBodyProviderSelector>(
+                null, MessageBodyProviderSelector.class,
+                MessageBodyProviderSelector.class, this, _bus,
+                Collections.emptySet(), false, contracts, -1) {
+
+            @Override
+            public void clearThreadLocalProxies() {
+                super.clearThreadLocalProxies();
+
+                for (ProviderInfo<?> providerInfo : _providerInfos.values()) {
+                    providerInfo.clearThreadLocalProxies();
+                }
+            }
+
+            @Override
+            public boolean contextsAvailable() {
+                return true;
+            }
+
+        };
+    }
+
+    @Override
+    public long getSize(
+        Object o, Class<?> type, Type genericType, Annotation[] annotations,
+        MediaType mediaType) {
+
+        return ((MessageBodyWriter)getSelected(
+            false, type, genericType, annotations, mediaType).getProvider()
+        ).getSize(o, type, genericType, annotations, mediaType);
+    }
+
+    /**
+     * Injects the context proxies of the extensions behind the selector, as
+     * CXF does for the providers it is handed.
+     */
+    public void injectContextProxies(
+        ServerProviderFactory serverProviderFactory) {
+
+        for (ProviderInfo<?> providerInfo : _providerInfos.values()) {
+            if (providerInfo.contextsAvailable()) {
+                InjectionUtils.injectContextProxiesAndApplication(
+                    providerInfo, providerInfo.getProvider(), null,
+                    serverProviderFactory);
+            }
+        }
+    }
+
+    @Override
+    public boolean isReadable(
+        Class<?> type, Type genericType, Annotation[] annotations,
+        MediaType mediaType) {
+
+        return select(true, type, genericType, annotations, mediaType) != null;
+    }
+
+    @Override
+    public boolean isWriteable(
+        Class<?> type, Type genericType, Annotation[] annotations,
+        MediaType mediaType) {
+
+        return select(
+            false, type, genericType, annotations, mediaType) != null;
+    }
+
+    @Override
+    public Object readFrom(
+            Class<Object> type, Type genericType, Annotation[] annotations,
+            MediaType mediaType, MultivaluedMap<String, String> httpHeaders,
+            InputStream entityStream)
+        throws IOException, WebApplicationException {
+
+        return ((MessageBodyReader)getSelected(
+            true, type, genericType, annotations, mediaType).getProvider()
+        ).readFrom(
+            type, genericType, annotations, mediaType, httpHeaders,
+            entityStream);
+    }
+
+    @Override
+    public void writeTo(
+            Object o, Class<?> type, Type genericType, Annotation[] annotations,
+            MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
+            OutputStream entityStream)
+        throws IOException, WebApplicationException {
+
+        ((MessageBodyWriter)getSelected(
+            false, type, genericType, annotations, mediaType).getProvider()
+        ).writeTo(
+            o, type, genericType, annotations, mediaType, httpHeaders,
+            entityStream);
+    }
+
+    /**
+     * Returns the extension {@link #isReadable} or {@link #isWriteable}
+     * chose, choosing again if the choice has been evicted since.
+     */
+    private ProviderInfo<?> getSelected(
+        boolean read, Class<?> type, Type genericType,
+        Annotation[] annotations, MediaType mediaType) {
+
+        Selection selection = (read ? _readerSelections : _writerSelections).
+            get(new Key(type, genericType, annotations, mediaType));
+
+        ProviderInfo<?> providerInfo = selection == null ?
+            select(read, type, genericType, annotations, mediaType) :
+            selection._providerInfo;
+
+        if (providerInfo == null) {
+            throw new InternalServerErrorException(
+                "No extension " + (read ? "reads " : "writes ") + type +
+                    " as " + mediaType);
+        }
+
+        return providerInfo;
+    }
+
+    private ProviderInfo<?> select(
+        boolean read, Class<?> type, Type genericType,
+        Annotation[] annotations, MediaType mediaType) {
+
+        Map<Key, Selection> selections =
+            read ? _readerSelections : _writerSelections;
+
+        Message message = PhaseInterceptorChain.getCurrentMessage();
+
+        Key key = new Key(type, genericType, annotations, mediaType);
+
+        Selection selection = selections.get(key);
+
+        if (selection != null) {
+            _hits.increment();
+
+            ProviderInfo<?> providerInfo = selection._providerInfo;
+
+            if (providerInfo != null && message != null) {
+                InjectionUtils.injectContexts(
+                    providerInfo.getProvider(), providerInfo, message);
+            }
+
+            return providerInfo;
+        }
+
+        _misses.increment();
+
+        if (message == null) {
+            message = new MessageImpl();
+        }
+
+        // the factory falls back to the providers of CXF, which are not ours
+        Object provider = read ?
+            _providerFactory.createMessageBodyReader(
+                type, genericType, annotations, mediaType, message) :
+            _providerFactory.createMessageBodyWriter(
+                type, genericType, annotations, mediaType, message);
+
+        ProviderInfo<?> selected =
+            provider == null ? null : _providerInfos.get(provider);
+
+        if (selections.size() >= _MAX_SELECTIONS) {
+            Iterator<Key> iterator = selections.keySet().iterator();
+
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+
+        selections.put(key, new Selection(selected));
+
+        return selected;
+    }
+
+    private static final int _MAX_SELECTIONS = 1024;
+
+    private final Bus _bus;
+    private final LongAdder _hits;
+    private final LongAdder _misses;
+    private final ServerProviderFactory _providerFactory;
+    private final Map<Object, ProviderInfo<?>> _providerInfos =
+        new IdentityHashMap<>();
+    private final Map<Key, Selection> _readerSelections =
+        new ConcurrentHashMap<>();
+    private final Map<Key, Selection> _writerSelections =
+        new ConcurrentHashMap<>();
+
+    private static class Key {
+
+        Key(
+            Class<?> type, Type genericType, Annotation[] annotations,
+            MediaType mediaType) {
+
+            _type = type;
+            _genericType = genericType;
+            _annotations = annotations == null ?
+                new Annotation[0] : annotations;
+            _mediaType = mediaType;
+
+            int hashCode = Objects.hash(type, genericType, mediaType);
+
+            for (Annotation annotation : _annotations) {
+                hashCode = 31 * hashCode +
+                    annotation.annotationType().hashCode();
+            }
+
+            _hashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key)obj;
+
+            return _hashCode == key._hashCode && _type == key._type &&
+                Objects.equals(_genericType, key._genericType) &&
+                Objects.equals(_mediaType, key._mediaType) &&
+                Arrays.equals(_annotations, key._annotations);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hashCode;
+        }
+
+        private final Annotation[] _annotations;
+        private final Type _genericType;
+        private final int _hashCode;
+        private final MediaType _mediaType;
+        private final Class<?> _type;
+
+    }
+
+    private static class Selection {
+
+        Selection(ProviderInfo<?> providerInfo) {
+            _providerInfo = providerInfo;
+        }
+
+        private final ProviderInfo<?> _providerInfo;
+
+    }
+
+}
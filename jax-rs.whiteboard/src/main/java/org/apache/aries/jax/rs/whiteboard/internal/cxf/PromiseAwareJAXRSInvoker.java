@@ -16,18 +16,416 @@
  */
 package org.apache.aries.jax.rs.whiteboard.internal.cxf;
 
-import java.util.Arrays;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.ConnectionCallback;
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.sse.SseEventSink;
+
+import org.apache.aries.jax.rs.whiteboard.AriesJaxrsWhiteboardConstants;
+import org.apache.cxf.common.util.ClassHelper;
+import org.apache.cxf.continuations.ContinuationProvider;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.interceptor.InterceptorChain;
 import org.apache.cxf.jaxrs.JAXRSInvoker;
 import org.apache.cxf.jaxrs.impl.AsyncResponseImpl;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.jaxrs.model.ProviderInfo;
+import org.apache.cxf.jaxrs.provider.ServerProviderFactory;
+import org.apache.cxf.jaxrs.utils.InjectionUtils;
+import org.apache.cxf.jaxrs.utils.JAXRSUtils;
+import org.apache.cxf.message.Exchange;
 import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageContentsList;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.osgi.util.promise.Deferred;
 import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.PromiseFactory;
 
 public class PromiseAwareJAXRSInvoker extends JAXRSInvoker {
-    private final ConcurrentMap<Class<?>, Boolean> promises = new ConcurrentHashMap<>();
-    
+    private static final String CANCELLATION =
+        PromiseAwareJAXRSInvoker.class.getName() + ".cancellation";
+
+    private static final PromiseFactory CANCELLATIONS = new PromiseFactory(
+        PromiseFactory.inlineExecutor());
+
+    private static final long PUBLISHER_HEARTBEAT_INTERVAL =
+        TimeUnit.SECONDS.toMillis(15);
+
+    private final ConcurrentMap<Class<?>, ForeignPromise> promises = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, PublisherOutput.Adapter> publishers = new ConcurrentHashMap<>();
+    private final Executor invocationExecutor;
+    private final StreamLimit streamLimit;
+
+    public PromiseAwareJAXRSInvoker() {
+        this(null, null);
+    }
+
+    /**
+     * Resource methods are invoked on {@code invocationExecutor}, when not
+     * null, while the request is suspended, so blocking resource methods do
+     * not hold a container thread. Publishers are streamed within {@code
+     * streamLimit}, when not null.
+     */
+    public PromiseAwareJAXRSInvoker(
+        Executor invocationExecutor, StreamLimit streamLimit) {
+
+        this.invocationExecutor = invocationExecutor;
+        this.streamLimit = streamLimit;
+    }
+
+    @Override
+    protected Object invoke(
+        Exchange exchange, Object serviceObject, Method m,
+        List<Object> params) {
+
+        if (returnsFuture(m)) {
+            Deferred<Void> cancellation = CANCELLATIONS.deferred();
+
+            exchange.put(CANCELLATION, cancellation);
+            exchange.getInMessage().put(
+                AriesJaxrsWhiteboardConstants.CANCELLATION,
+                cancellation.getPromise());
+        }
+
+        if (isStreaming(m)) {
+            CxfJaxrsServlet.setStreaming(exchange.getInMessage());
+        }
+
+        if (invocationExecutor == null || !isDispatchable(exchange, m)) {
+            return adaptPublisher(
+                exchange, m, super.invoke(exchange, serviceObject, m, params));
+        }
+
+        Message inMessage = exchange.getInMessage();
+        OperationResourceInfo ori = exchange.get(OperationResourceInfo.class);
+        ClassResourceInfo cri = ori.getClassResourceInfo();
+        ClassLoader contextClassLoader =
+            Thread.currentThread().getContextClassLoader();
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+
+        try {
+            invocationExecutor.execute(() -> {
+                Thread thread = Thread.currentThread();
+
+                ClassLoader classLoader = thread.getContextClassLoader();
+
+                thread.setContextClassLoader(contextClassLoader);
+
+                ServerProviderFactory providerFactory =
+                    ServerProviderFactory.getInstance(inMessage);
+
+                Message currentMessage = setCurrentMessage(
+                    inMessage, inMessage);
+
+                Object result = null;
+                Throwable failure = null;
+
+                try {
+                    injectContexts(
+                        providerFactory, cri, serviceObject, inMessage);
+
+                    result = adaptPublisher(
+                        exchange, m,
+                        super.invoke(exchange, serviceObject, m, params));
+                }
+                catch (Fault f) {
+                    failure = f.getCause() == null ? f : f.getCause();
+                }
+                catch (Throwable t) {
+                    failure = t;
+                }
+                finally {
+                    cri.clearThreadLocalProxies();
+                    providerFactory.clearThreadLocalProxies();
+
+                    setCurrentMessage(inMessage, currentMessage);
+
+                    thread.setContextClassLoader(classLoader);
+                }
+
+                // the request may resume on another thread from here on
+                if (failure != null) {
+                    future.completeExceptionally(failure);
+                }
+                else {
+                    future.complete(
+                        result instanceof MessageContentsList ?
+                            ((MessageContentsList)result).get(0) : result);
+                }
+            });
+        }
+        catch (RejectedExecutionException ree) {
+            return adaptPublisher(
+                exchange, m, super.invoke(exchange, serviceObject, m, params));
+        }
+
+        return new MessageContentsList(future);
+    }
+
+    /**
+     * Publishers are written element by element as they are published, in
+     * the media type negotiated from the {@code Accept} header and the
+     * {@code @Produces} of the resource method: as server-sent events, as a
+     * JSON array, or one element after another.
+     */
+    private Object adaptPublisher(Exchange exchange, Method m, Object result) {
+        if (!(result instanceof MessageContentsList)) {
+            return result;
+        }
+
+        MessageContentsList contents = (MessageContentsList)result;
+
+        Object publisher = contents.isEmpty() ? null : contents.get(0);
+
+        if (publisher == null || publisher instanceof Promise ||
+            publisher instanceof CompletionStage) {
+
+            return result;
+        }
+
+        PublisherOutput.Adapter adapter = publishers.computeIfAbsent(
+            publisher.getClass(), PublisherOutput.Adapter::forClass);
+
+        if (adapter == PublisherOutput.Adapter.NOT_A_PUBLISHER) {
+            return result;
+        }
+
+        OperationResourceInfo ori = exchange.get(OperationResourceInfo.class);
+
+        if (ori == null || ori.isSubResourceLocator()) {
+            return result;
+        }
+
+        Type elementType = null;
+
+        Type genericReturnType = m.getGenericReturnType();
+
+        if (genericReturnType instanceof ParameterizedType) {
+            Type[] arguments =
+                ((ParameterizedType)genericReturnType).getActualTypeArguments();
+
+            if (arguments.length == 1 && !(arguments[0] instanceof WildcardType)) {
+                elementType = arguments[0];
+            }
+        }
+
+        if (streamLimit != null) {
+            streamLimit.check();
+        }
+
+        MediaType mediaType = getMediaType(exchange, ori);
+
+        CxfJaxrsServlet.setStreaming(exchange.getInMessage());
+
+        return new MessageContentsList(
+            Response.ok(
+                new PublisherOutput(
+                    adapter, publisher, elementType, m.getAnnotations(),
+                    mediaType, getElementMediaType(mediaType, ori),
+                    PUBLISHER_HEARTBEAT_INTERVAL, streamLimit,
+                    exchange.getInMessage()),
+                mediaType
+            ).build());
+    }
+
+    /**
+     * Server-sent events carry their elements in the first other media type
+     * the resource method produces, JSON if there is none.
+     */
+    private static MediaType getElementMediaType(
+        MediaType mediaType, OperationResourceInfo ori) {
+
+        if (!MediaType.SERVER_SENT_EVENTS_TYPE.isCompatible(mediaType)) {
+            return mediaType;
+        }
+
+        for (MediaType produces : ori.getProduceTypes()) {
+            if (isConcrete(produces) &&
+                !MediaType.SERVER_SENT_EVENTS_TYPE.isCompatible(produces)) {
+
+                return withoutQuality(produces);
+            }
+        }
+
+        return MediaType.APPLICATION_JSON_TYPE;
+    }
+
+    /**
+     * Returns the media type the client prefers among those the resource
+     * method produces. Methods producing any media type answer with JSON
+     * when the client accepts it.
+     */
+    private static MediaType getMediaType(
+        Exchange exchange, OperationResourceInfo ori) {
+
+        String accept = (String)exchange.getInMessage().get(
+            Message.ACCEPT_CONTENT_TYPE);
+
+        List<MediaType> acceptTypes = JAXRSUtils.sortMediaTypes(
+            accept == null ? MediaType.WILDCARD : accept,
+            JAXRSUtils.MEDIA_TYPE_Q_PARAM);
+
+        for (MediaType acceptType : acceptTypes) {
+            for (MediaType produces : ori.getProduceTypes()) {
+                if (isConcrete(produces) && produces.isCompatible(acceptType)) {
+                    return withoutQuality(produces);
+                }
+            }
+        }
+
+        for (MediaType acceptType : acceptTypes) {
+            if (MediaType.APPLICATION_JSON_TYPE.isCompatible(acceptType)) {
+                return MediaType.APPLICATION_JSON_TYPE;
+            }
+        }
+
+        for (MediaType acceptType : acceptTypes) {
+            if (isConcrete(acceptType)) {
+                return withoutQuality(acceptType);
+            }
+        }
+
+        return MediaType.APPLICATION_JSON_TYPE;
+    }
+
+    private static boolean isConcrete(MediaType mediaType) {
+        return !mediaType.isWildcardType() && !mediaType.isWildcardSubtype();
+    }
+
+    private static MediaType withoutQuality(MediaType mediaType) {
+        return JAXRSUtils.toMediaType(
+            JAXRSUtils.mediaTypeToString(
+                mediaType, JAXRSUtils.MEDIA_TYPE_Q_PARAM,
+                JAXRSUtils.MEDIA_TYPE_QS_PARAM));
+    }
+
+    /**
+     * Only resource methods that complete the request when they return can
+     * be dispatched, and only when the request can be suspended. Methods
+     * declared to return {@code Object} might return a promise.
+     */
+    private boolean isDispatchable(Exchange exchange, Method m) {
+        Message inMessage = exchange.getInMessage();
+
+        if (inMessage.get(ContinuationProvider.class.getName()) == null ||
+            inMessage.get(AsyncResponse.class) != null) {
+
+            return false;
+        }
+
+        OperationResourceInfo ori = exchange.get(OperationResourceInfo.class);
+
+        if (ori == null || ori.isSubResourceLocator()) {
+            return false;
+        }
+
+        Class<?> returnType = m.getReturnType();
+
+        return returnType != Object.class &&
+            !CompletionStage.class.isAssignableFrom(returnType) &&
+            !Promise.class.isAssignableFrom(returnType) &&
+            !returnType.getName().equals("org.osgi.util.promise.Promise") &&
+            !isPromise(returnType);
+    }
+
+    private static boolean isStreaming(Method m) {
+        for (Class<?> parameterType : m.getParameterTypes()) {
+            if (SseEventSink.class.isAssignableFrom(parameterType)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean returnsFuture(Method m) {
+        Class<?> returnType = m.getReturnType();
+
+        return CompletionStage.class.isAssignableFrom(returnType) ||
+            Promise.class.isAssignableFrom(returnType) ||
+            isPromise(returnType);
+    }
+
+    private boolean isPromise(Class<?> clazz) {
+        return getForeignPromise(clazz) != ForeignPromise.NOT_A_PROMISE;
+    }
+
+    private ForeignPromise getForeignPromise(Class<?> clazz) {
+        return promises.computeIfAbsent(clazz, ForeignPromise::forClass);
+    }
+
+    /**
+     * Context proxies hold their values per thread, so the values set by the
+     * container thread are set again on the invoking thread.
+     */
+    private static void injectContexts(
+        ServerProviderFactory providerFactory, ClassResourceInfo cri,
+        Object serviceObject, Message inMessage) {
+
+        InjectionUtils.injectContexts(
+            ClassHelper.getRealObject(serviceObject), cri, inMessage);
+
+        if (cri.isRoot()) {
+            ProviderInfo<Application> appProvider =
+                providerFactory.getApplicationProvider();
+
+            if (appProvider != null) {
+                InjectionUtils.injectContexts(
+                    appProvider.getProvider(), appProvider, inMessage);
+            }
+        }
+    }
+
+    /**
+     * Makes {@code message} the current message of the invoking thread, as
+     * CXF does when it invokes on an executor of its own, so that code
+     * relying on it, like relative locations of responses, keeps working.
+     * Returns the message that was current before.
+     */
+    private static Message setCurrentMessage(
+        Message inMessage, Message message) {
+
+        Message currentMessage = PhaseInterceptorChain.getCurrentMessage();
+
+        InterceptorChain chain = inMessage.getInterceptorChain();
+
+        if (chain instanceof PhaseInterceptorChain) {
+            try {
+                PhaseInterceptorChain.setCurrentMessage(
+                    (PhaseInterceptorChain)chain, message);
+            }
+            catch (IllegalStateException ise) {
+                // the chain is elsewhere, the method runs without it
+            }
+        }
+
+        return currentMessage;
+    }
+
     /**
      * OSGi promises are a great way to do asynchronous work, and should be handled
      * natively just like a CompletionStage
@@ -43,44 +441,222 @@ public class PromiseAwareJAXRSInvoker extends JAXRSInvoker {
         } 
         
         // Slower check, is it a Promise?
-        final Class<?> clazz = result.getClass();
-        if (promises.computeIfAbsent(clazz, type -> Arrays.stream(type.getInterfaces())
-                .map(Class::getName)
-                .anyMatch("org.osgi.util.promise.Promise"::equals))) {
-            return handlePromiseFromAnotherClassSpace(inMessage, result, clazz);
+        final ForeignPromise foreignPromise = getForeignPromise(result.getClass());
+        if (foreignPromise != ForeignPromise.NOT_A_PROMISE) {
+            return handlePromiseFromAnotherClassSpace(inMessage, result, foreignPromise);
         }
-        
-        return super.checkFutureResponse(inMessage, result);
+
+        AsyncResponseImpl asyncResponse = super.checkFutureResponse(inMessage, result);
+
+        if (asyncResponse != null && result instanceof CompletionStage) {
+            Cancellation cancellation = new Cancellation(
+                inMessage, () -> cancel((CompletionStage<?>)result));
+
+            ((CompletionStage<?>)result).whenComplete(
+                (v, t) -> cancellation.settle());
+
+            cancellation.register(asyncResponse);
+        }
+
+        return asyncResponse;
     }
 
     private AsyncResponseImpl handlePromise(Message inMessage, final Promise<?> promise) {
         final AsyncResponseImpl asyncResponse = new AsyncResponseImpl(inMessage);
-        promise.onSuccess(asyncResponse::resume)
-               .onFailure(asyncResponse::resume);
+        final Cancellation cancellation = new Cancellation(inMessage, () -> true);
+        cancellation.register(asyncResponse);
+        promise.onSuccess(v -> {
+                    cancellation.settle();
+                    asyncResponse.resume(v);
+               })
+               .onFailure(t -> {
+                    cancellation.settle();
+                    asyncResponse.resume(t);
+               });
         return asyncResponse;
     }
 
-    private AsyncResponseImpl handlePromiseFromAnotherClassSpace(Message inMessage, Object result, Class<?> clazz) {
-        // It's a promise, but from a different class space. Use reflection to 
-        // register a callback with the promise
+    private AsyncResponseImpl handlePromiseFromAnotherClassSpace(Message inMessage, Object result, ForeignPromise foreignPromise) {
+        // It's a promise, but from a different class space. Use the method
+        // handles of its class to register a callback with the promise
         final AsyncResponseImpl asyncResponse = new AsyncResponseImpl(inMessage);
+        final Cancellation cancellation = new Cancellation(inMessage, () -> true);
+        cancellation.register(asyncResponse);
         try {
-            clazz.getMethod("onResolve", Runnable.class).invoke(result, (Runnable) () -> {
+            foreignPromise.onResolve(result, () -> {
+                    cancellation.settle();
                     try {
-                        Object failure = clazz.getMethod("getFailure").invoke(result);
-                        
+                        Throwable failure = foreignPromise.getFailure(result);
+
                         if(failure != null) {
-                            asyncResponse.resume((Throwable) failure);
+                            asyncResponse.resume(failure);
                         } else {
-                            asyncResponse.resume(clazz.getMethod("getValue").invoke(result));
+                            asyncResponse.resume(foreignPromise.getValue(result));
                         }
-                    } catch (Exception e) {
-                        asyncResponse.resume(e);
+                    } catch (Throwable t) {
+                        asyncResponse.resume(t);
                     }
                 });
-        } catch (Exception e) {
-            asyncResponse.resume(e);
+        } catch (Throwable t) {
+            asyncResponse.resume(t);
         }
         return asyncResponse;
     }
+
+    /**
+     * Cancels the stage when it is a future, or can be viewed as one, that
+     * is not done yet.
+     */
+    private static boolean cancel(CompletionStage<?> stage) {
+        Future<?> future;
+
+        if (stage instanceof Future) {
+            future = (Future<?>)stage;
+        }
+        else {
+            try {
+                future = stage.toCompletableFuture();
+            }
+            catch (UnsupportedOperationException uoe) {
+                return true;
+            }
+        }
+
+        return !future.isDone() && future.cancel(true);
+    }
+
+    /**
+     * Propagates the end of a request to the result of its resource method
+     * when the response completes, times out or the client disconnects
+     * before the result does: the result is cancelled, when it can be, and
+     * the {@link AriesJaxrsWhiteboardConstants#CANCELLATION} promise of the
+     * request is resolved.
+     */
+    private static final class Cancellation implements CompletionCallback {
+
+        Cancellation(Message inMessage, BooleanSupplier cancel) {
+            this.inMessage = inMessage;
+            this.cancel = cancel;
+        }
+
+        @Override
+        public void onComplete(Throwable throwable) {
+            cancel();
+        }
+
+        /**
+         * CXF only registers an object as one kind of callback.
+         */
+        void register(AsyncResponse asyncResponse) {
+            asyncResponse.register(this);
+            asyncResponse.register((ConnectionCallback)__ -> cancel());
+        }
+
+        /**
+         * The result is done, there is nothing left to cancel.
+         */
+        void settle() {
+            settled.set(true);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void cancel() {
+            if (!settled.compareAndSet(false, true) || !cancel.getAsBoolean()) {
+                return;
+            }
+
+            Deferred<Void> cancellation =
+                (Deferred<Void>)inMessage.getExchange().get(CANCELLATION);
+
+            if (cancellation != null) {
+                cancellation.resolve(null);
+            }
+        }
+
+        private final BooleanSupplier cancel;
+        private final Message inMessage;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+    }
+
+    /**
+     * The methods of a promise from another class space, looked up once per
+     * class through the {@code Promise} interface it implements.
+     */
+    private static final class ForeignPromise {
+
+        static final ForeignPromise NOT_A_PROMISE = new ForeignPromise();
+
+        static ForeignPromise forClass(Class<?> type) {
+            Class<?> promiseClass = findPromiseClass(type);
+
+            if (promiseClass == null) {
+                return NOT_A_PROMISE;
+            }
+
+            try {
+                return new ForeignPromise(promiseClass);
+            } catch (ReflectiveOperationException e) {
+                return NOT_A_PROMISE;
+            }
+        }
+
+        // implementations may inherit the interface from their superclass
+        private static Class<?> findPromiseClass(Class<?> type) {
+            if (type == null) {
+                return null;
+            }
+
+            if (type.isInterface() && type.getName().equals("org.osgi.util.promise.Promise")) {
+                return type;
+            }
+
+            for (Class<?> iface : type.getInterfaces()) {
+                Class<?> promiseClass = findPromiseClass(iface);
+
+                if (promiseClass != null) {
+                    return promiseClass;
+                }
+            }
+
+            return findPromiseClass(type.getSuperclass());
+        }
+
+        private ForeignPromise() {
+            onResolve = null;
+            getFailure = null;
+            getValue = null;
+        }
+
+        private ForeignPromise(Class<?> promiseClass) throws ReflectiveOperationException {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+            onResolve = lookup.findVirtual(
+                promiseClass, "onResolve", MethodType.methodType(promiseClass, Runnable.class)
+            ).asType(MethodType.methodType(void.class, Object.class, Runnable.class));
+            getFailure = lookup.findVirtual(
+                promiseClass, "getFailure", MethodType.methodType(Throwable.class)
+            ).asType(MethodType.methodType(Throwable.class, Object.class));
+            getValue = lookup.findVirtual(
+                promiseClass, "getValue", MethodType.methodType(Object.class)
+            ).asType(MethodType.methodType(Object.class, Object.class));
+        }
+
+        void onResolve(Object promise, Runnable callback) throws Throwable {
+            onResolve.invokeExact(promise, callback);
+        }
+
+        Throwable getFailure(Object promise) throws Throwable {
+            return (Throwable)getFailure.invokeExact(promise);
+        }
+
+        Object getValue(Object promise) throws Throwable {
+            return (Object)getValue.invokeExact(promise);
+        }
+
+        private final MethodHandle onResolve;
+        private final MethodHandle getFailure;
+        private final MethodHandle getValue;
+
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.aries.jax.rs.whiteboard.PooledResourceDTO;
+import org.osgi.framework.ServiceObjects;
+
+/**
+ * Keeps up to a number of idle instances of a prototype service, so requests
+ * lease an instance instead of getting and releasing one each. Leases never
+ * wait: when no instance is idle a new one is obtained, and instances
+ * returned to a full pool are released. Instances idle for longer than the
+ * idle timeout are released periodically.
+ */
+public class PrototypeInstancePool {
+
+    public PrototypeInstancePool(
+        ServiceObjects<?> serviceObjects, int poolSize, long idleTimeout,
+        ScheduledExecutorService executor) {
+
+        _serviceObjects = serviceObjects;
+        _poolSize = poolSize;
+        _idleTimeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+
+        if (idleTimeout > 0) {
+            _future = executor.scheduleWithFixedDelay(
+                this::evictIdle, idleTimeout, idleTimeout,
+                TimeUnit.MILLISECONDS);
+        }
+        else {
+            _future = null;
+        }
+    }
+
+    /**
+     * Releases every idle instance. Instances leased at this point are
+     * released when they are returned.
+     */
+    public void close() {
+        if (_future != null) {
+            _future.cancel(false);
+        }
+
+        List<Object> instances = new ArrayList<>();
+
+        synchronized (this) {
+            _closed = true;
+
+            while (!_idle.isEmpty()) {
+                instances.add(_idle.pollFirst()._instance);
+            }
+        }
+
+        instances.forEach(this::ungetService);
+    }
+
+    /**
+     * Releases the instances that have been idle for longer than the idle
+     * timeout. The least recently returned instances are at the end of the
+     * pool.
+     */
+    public void evictIdle() {
+        List<Object> instances = new ArrayList<>();
+
+        long now = System.nanoTime();
+
+        synchronized (this) {
+            while (!_idle.isEmpty() &&
+                   now - _idle.peekLast()._since > _idleTimeout) {
+
+                instances.add(_idle.pollLast()._instance);
+            }
+
+            _evictedInstances += instances.size();
+        }
+
+        instances.forEach(this::ungetService);
+    }
+
+    /**
+     * Returns an idle instance, or a new one when none is idle.
+     */
+    public Object lease() {
+        synchronized (this) {
+            Idle idle = _idle.pollFirst();
+
+            if (idle != null) {
+                _leasedInstances++;
+                _leases++;
+
+                return idle._instance;
+            }
+        }
+
+        Object instance = _serviceObjects.getService();
+
+        if (instance == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            _createdInstances++;
+            _leasedInstances++;
+            _leases++;
+        }
+
+        return instance;
+    }
+
+    /**
+     * Returns a leased instance to the pool.
+     */
+    public void release(Object instance) {
+        synchronized (this) {
+            _leasedInstances--;
+
+            if (!_closed && _idle.size() < _poolSize) {
+                _idle.addFirst(new Idle(instance, System.nanoTime()));
+
+                return;
+            }
+        }
+
+        ungetService(instance);
+    }
+
+    public synchronized PooledResourceDTO populateDTO(
+        PooledResourceDTO pooledResourceDTO) {
+
+        pooledResourceDTO.createdInstances = _createdInstances;
+        pooledResourceDTO.evictedInstances = _evictedInstances;
+        pooledResourceDTO.idleInstances = _idle.size();
+        pooledResourceDTO.leasedInstances = _leasedInstances;
+        pooledResourceDTO.leases = _leases;
+        pooledResourceDTO.poolSize = _poolSize;
+
+        return pooledResourceDTO;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void ungetService(Object instance) {
+        ((ServiceObjects)_serviceObjects).ungetService(instance);
+    }
+
+    private boolean _closed;
+    private long _createdInstances;
+    private long _evictedInstances;
+    private final ScheduledFuture<?> _future;
+    private final Deque<Idle> _idle = new ArrayDeque<>();
+    private final long _idleTimeout;
+    private int _leasedInstances;
+    private long _leases;
+    private final int _poolSize;
+    private final ServiceObjects<?> _serviceObjects;
+
+    private static class Idle {
+
+        Idle(Object instance, long since) {
+            _instance = instance;
+            _since = since;
+        }
+
+        private final Object _instance;
+        private final long _since;
+
+    }
+
+}
@@ -18,7 +18,7 @@
 package org.apache.aries.jax.rs.whiteboard.internal.cxf;
 
 import org.apache.aries.component.dsl.CachingServiceReference;
-import org.apache.aries.jax.rs.whiteboard.internal.utils.Utils;
+import org.apache.aries.jax.rs.whiteboard.internal.utils.ServiceTuple;
 import org.apache.cxf.jaxrs.lifecycle.ResourceProvider;
 import org.apache.cxf.message.Message;
 import org.osgi.framework.ServiceObjects;
@@ -28,11 +28,21 @@ public class PrototypeServiceReferenceResourceProvider
 
     public PrototypeServiceReferenceResourceProvider(
         CachingServiceReference<?> serviceReference,
-        Class<?> serviceClass, ServiceObjects<?> serviceObjects) {
+        Class<?> serviceClass, ServiceTuple<?> serviceTuple) {
+
+        this(serviceReference, serviceClass, serviceTuple, null);
+    }
+
+    public PrototypeServiceReferenceResourceProvider(
+        CachingServiceReference<?> serviceReference,
+        Class<?> serviceClass, ServiceTuple<?> serviceTuple,
+        PrototypeInstancePool pool) {
 
         _serviceReference = serviceReference;
         _serviceClass = serviceClass;
-        _serviceObjects = serviceObjects;
+        _serviceTuple = serviceTuple;
+        _serviceObjects = serviceTuple.getServiceObjects();
+        _pool = pool;
 
         _messageKey = _MESSAGE_INSTANCE_KEY_PREFIX + _serviceClass;
     }
@@ -46,7 +56,8 @@ public class PrototypeServiceReferenceResourceProvider
         }
 
         if (isAvailable()) {
-            Object service = _serviceObjects.getService();
+            Object service = _pool == null ?
+                _serviceObjects.getService() : _pool.lease();
 
             m.put(_messageKey, service);
 
@@ -60,7 +71,12 @@ public class PrototypeServiceReferenceResourceProvider
     @Override
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public void releaseInstance(Message m, Object o) {
-        ((ServiceObjects)_serviceObjects).ungetService(o);
+        if (_pool == null) {
+            ((ServiceObjects)_serviceObjects).ungetService(o);
+        }
+        else {
+            _pool.release(o);
+        }
 
         m.remove(_messageKey);
     }
@@ -79,8 +95,26 @@ public class PrototypeServiceReferenceResourceProvider
         return _serviceReference;
     }
 
+    /**
+     * Returns the pool instances are leased from, or {@code null} when every
+     * request gets its own instance.
+     */
+    public PrototypeInstancePool getPool() {
+        return _pool;
+    }
+
+    @Override
+    public int getRankOrdinal() {
+        return _rankOrdinal;
+    }
+
     public boolean isAvailable() {
-        return Utils.isAvailable(_serviceObjects.getServiceReference());
+        return _serviceTuple.isAvailable();
+    }
+
+    @Override
+    public void setRankOrdinal(int rankOrdinal) {
+        _rankOrdinal = rankOrdinal;
     }
 
     private static final String _MESSAGE_INSTANCE_KEY_PREFIX =
@@ -88,8 +122,11 @@ public class PrototypeServiceReferenceResourceProvider
             "PrototypeServiceReferenceResourceProvider.";
 
     private final String _messageKey;
+    private final PrototypeInstancePool _pool;
+    private volatile int _rankOrdinal;
     private Class<?> _serviceClass;
     private final ServiceObjects<?> _serviceObjects;
     private CachingServiceReference<?> _serviceReference;
+    private final ServiceTuple<?> _serviceTuple;
 
 }
@@ -0,0 +1,490 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+import org.apache.cxf.jaxrs.impl.MetadataMap;
+import org.apache.cxf.jaxrs.provider.ServerProviderFactory;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+
+/**
+ * Writes the elements of a {@code java.util.concurrent.Flow.Publisher}, or
+ * of a Reactive Streams {@code Publisher}, returned by a resource method as
+ * they are published, as server-sent events, as a JSON array, or one after
+ * another for other media types. One element is requested at a time, once the
+ * previous one has been written and flushed to the response, so a slow client
+ * slows down the publisher. While the publisher is idle a heartbeat is written
+ * every {@code heartbeatInterval} milliseconds, a comment for server-sent
+ * events and whitespace in a JSON array, and the response is flushed, so a
+ * client that went away is found and the subscription cancelled. The
+ * container thread writing the response is held until then, so publishers
+ * are only written within the stream limit of the application, when there
+ * is one.
+ */
+public class PublisherOutput implements StreamingOutput {
+
+    public PublisherOutput(
+        Adapter adapter, Object publisher, Type elementType,
+        Annotation[] annotations, MediaType mediaType,
+        MediaType elementMediaType, long heartbeatInterval,
+        StreamLimit streamLimit, Message message) {
+
+        _adapter = adapter;
+        _publisher = publisher;
+        _elementType = elementType;
+        _annotations = annotations;
+        _elementMediaType = elementMediaType;
+        _heartbeatInterval = heartbeatInterval;
+        _streamLimit = streamLimit;
+        _message = message;
+
+        _sse = MediaType.SERVER_SENT_EVENTS_TYPE.isCompatible(mediaType);
+        _json = !_sse && isJson(mediaType);
+
+        _subscriber = createSubscriber();
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        if (_streamLimit == null) {
+            stream(outputStream);
+
+            return;
+        }
+
+        _streamLimit.acquire();
+
+        try {
+            stream(outputStream);
+        }
+        finally {
+            _streamLimit.release();
+        }
+    }
+
+    /**
+     * Looks up the methods of the publishers of a class once, through the
+     * publisher interface it implements.
+     */
+    public static final class Adapter {
+
+        public static final Adapter NOT_A_PUBLISHER = new Adapter();
+
+        public static Adapter forClass(Class<?> type) {
+            for (String[] names : _INTERFACE_NAMES) {
+                Class<?> publisherClass = findInterface(type, names[0]);
+
+                if (publisherClass == null) {
+                    continue;
+                }
+
+                try {
+                    ClassLoader classLoader = publisherClass.getClassLoader();
+
+                    return new Adapter(
+                        publisherClass,
+                        Class.forName(names[1], false, classLoader),
+                        Class.forName(names[2], false, classLoader));
+                }
+                catch (ReflectiveOperationException roe) {
+                    return NOT_A_PUBLISHER;
+                }
+            }
+
+            return NOT_A_PUBLISHER;
+        }
+
+        void cancel(Object subscription) {
+            try {
+                _cancel.invokeExact(subscription);
+            }
+            catch (Throwable t) {
+            }
+        }
+
+        void request(Object subscription, long n) throws IOException {
+            try {
+                _request.invokeExact(subscription, n);
+            }
+            catch (Throwable t) {
+                throw new IOException(t);
+            }
+        }
+
+        void subscribe(Object publisher, Object subscriber) throws IOException {
+            try {
+                _subscribe.invokeExact(publisher, subscriber);
+            }
+            catch (Throwable t) {
+                throw new IOException(t);
+            }
+        }
+
+        private Adapter() {
+            _cancel = null;
+            _request = null;
+            _subscribe = null;
+            _subscriberClass = null;
+        }
+
+        private Adapter(
+                Class<?> publisherClass, Class<?> subscriberClass,
+                Class<?> subscriptionClass)
+            throws ReflectiveOperationException {
+
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+            _cancel = lookup.findVirtual(
+                subscriptionClass, "cancel", MethodType.methodType(void.class)
+            ).asType(
+                MethodType.methodType(void.class, Object.class)
+            );
+            _request = lookup.findVirtual(
+                subscriptionClass, "request",
+                MethodType.methodType(void.class, long.class)
+            ).asType(
+                MethodType.methodType(void.class, Object.class, long.class)
+            );
+            _subscribe = lookup.findVirtual(
+                publisherClass, "subscribe",
+                MethodType.methodType(void.class, subscriberClass)
+            ).asType(
+                MethodType.methodType(void.class, Object.class, Object.class)
+            );
+            _subscriberClass = subscriberClass;
+        }
+
+        private static Class<?> findInterface(Class<?> type, String name) {
+            if (type == null) {
+                return null;
+            }
+
+            if (type.isInterface() && type.getName().equals(name)) {
+                return type;
+            }
+
+            for (Class<?> iface : type.getInterfaces()) {
+                Class<?> found = findInterface(iface, name);
+
+                if (found != null) {
+                    return found;
+                }
+            }
+
+            return findInterface(type.getSuperclass(), name);
+        }
+
+        private static final String[][] _INTERFACE_NAMES = {
+            {
+                "java.util.concurrent.Flow$Publisher",
+                "java.util.concurrent.Flow$Subscriber",
+                "java.util.concurrent.Flow$Subscription"
+            },
+            {
+                "org.reactivestreams.Publisher",
+                "org.reactivestreams.Subscriber",
+                "org.reactivestreams.Subscription"
+            }
+        };
+
+        private final MethodHandle _cancel;
+        private final MethodHandle _request;
+        private final MethodHandle _subscribe;
+        private final Class<?> _subscriberClass;
+
+    }
+
+    private Object createSubscriber() {
+        Class<?> subscriberClass = _adapter._subscriberClass;
+
+        ClassLoader classLoader = subscriberClass.getClassLoader();
+
+        if (classLoader == null) {
+            classLoader = PublisherOutput.class.getClassLoader();
+        }
+
+        return Proxy.newProxyInstance(
+            classLoader, new Class<?>[]{subscriberClass},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "onComplete":
+                        _signals.add(new Signal(Signal.Kind.COMPLETE, null));
+
+                        return null;
+                    case "onError":
+                        _signals.add(new Signal(Signal.Kind.ERROR, args[0]));
+
+                        return null;
+                    case "onNext":
+                        _signals.add(new Signal(Signal.Kind.NEXT, args[0]));
+
+                        return null;
+                    case "onSubscribe":
+                        _signals.add(
+                            new Signal(Signal.Kind.SUBSCRIBE, args[0]));
+
+                        return null;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return PublisherOutput.class.getName() + "@" +
+                            Integer.toHexString(System.identityHashCode(proxy));
+                }
+            });
+    }
+
+    @SuppressWarnings("unchecked")
+    private MessageBodyWriter<Object> getWriter(Class<?> elementClass)
+        throws IOException {
+
+        MessageBodyWriter<Object> writer = _writers.get(elementClass);
+
+        if (writer != null) {
+            return writer;
+        }
+
+        Message message = PhaseInterceptorChain.getCurrentMessage();
+
+        if (message == null) {
+            message = _message;
+        }
+
+        writer = (MessageBodyWriter<Object>)
+            ServerProviderFactory.getInstance(_message).
+                createMessageBodyWriter(
+                    elementClass, getElementType(elementClass), _annotations,
+                    _elementMediaType, message);
+
+        if (writer == null) {
+            throw new IOException(
+                "No message body writer for " + elementClass + " as " +
+                    _elementMediaType);
+        }
+
+        _writers.put(elementClass, writer);
+
+        return writer;
+    }
+
+    private Type getElementType(Class<?> elementClass) {
+        return _elementType == null ? elementClass : _elementType;
+    }
+
+    private static boolean isJson(MediaType mediaType) {
+        String subtype = mediaType.getSubtype();
+
+        return subtype.equals("json") || subtype.endsWith("+json");
+    }
+
+    private void stream(OutputStream outputStream) throws IOException {
+        _adapter.subscribe(_publisher, _subscriber);
+
+        Object subscription = null;
+
+        try {
+            subscription = take(outputStream, Signal.Kind.SUBSCRIBE)._value;
+
+            if (_json) {
+                outputStream.write('[');
+            }
+
+            boolean first = true;
+
+            while (true) {
+                _adapter.request(subscription, 1);
+
+                Signal signal = take(outputStream, null);
+
+                if (signal._kind == Signal.Kind.COMPLETE) {
+                    break;
+                }
+
+                if (signal._kind == Signal.Kind.ERROR) {
+                    subscription = null;
+
+                    throw new IOException(
+                        "Publisher failed", (Throwable)signal._value);
+                }
+
+                writeElement(outputStream, signal._value, first);
+
+                outputStream.flush();
+
+                first = false;
+            }
+
+            subscription = null;
+
+            if (_json) {
+                outputStream.write(']');
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException();
+        }
+        finally {
+            if (subscription != null) {
+                _adapter.cancel(subscription);
+            }
+        }
+    }
+
+    private Signal take(OutputStream outputStream, Signal.Kind expected)
+        throws InterruptedException, IOException {
+
+        Signal signal;
+
+        // the client is only found gone when something is written to it
+        while ((signal = _signals.poll(
+                    _heartbeatInterval, TimeUnit.MILLISECONDS)) == null) {
+
+            writeHeartbeat(outputStream);
+        }
+
+        if (expected != null && signal._kind != expected) {
+            throw new IOException("Unexpected " + signal._kind + " signal");
+        }
+
+        return signal;
+    }
+
+    private void writeElement(
+            OutputStream outputStream, Object element, boolean first)
+        throws IOException {
+
+        Class<?> elementClass = element.getClass();
+
+        MessageBodyWriter<Object> writer = getWriter(elementClass);
+
+        if (!_sse) {
+            if (_json && !first) {
+                outputStream.write(',');
+            }
+
+            writer.writeTo(
+                element, elementClass, getElementType(elementClass),
+                _annotations, _elementMediaType, new MetadataMap<>(),
+                new FilterOutputStream(outputStream) {
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len)
+                        throws IOException {
+
+                        out.write(b, off, len);
+                    }
+
+                });
+
+            return;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        writer.writeTo(
+            element, elementClass, getElementType(elementClass), _annotations,
+            _elementMediaType, new MetadataMap<>(), buffer);
+
+        StringBuilder event = new StringBuilder();
+
+        for (String line :
+                new String(buffer.toByteArray(), StandardCharsets.UTF_8).
+                    split("\r\n|\r|\n", -1)) {
+
+            event.append("data: ").append(line).append('\n');
+        }
+
+        event.append('\n');
+
+        outputStream.write(event.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeHeartbeat(OutputStream outputStream) throws IOException {
+        if (_sse) {
+            outputStream.write(_SSE_HEARTBEAT);
+        }
+        else if (_json) {
+            outputStream.write(' ');
+        }
+
+        outputStream.flush();
+    }
+
+    private static final byte[] _SSE_HEARTBEAT =
+        ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final Adapter _adapter;
+    private final Annotation[] _annotations;
+    private final MediaType _elementMediaType;
+    private final Type _elementType;
+    private final long _heartbeatInterval;
+    private final boolean _json;
+    private final Message _message;
+    private final Object _publisher;
+    private final BlockingQueue<Signal> _signals = new LinkedBlockingQueue<>();
+    private final boolean _sse;
+    private final StreamLimit _streamLimit;
+    private final Object _subscriber;
+    private final Map<Class<?>, MessageBodyWriter<Object>> _writers =
+        new HashMap<>();
+
+    private static class Signal {
+
+        Signal(Kind kind, Object value) {
+            _kind = kind;
+            _value = value;
+        }
+
+        private final Kind _kind;
+        private final Object _value;
+
+        enum Kind {COMPLETE, ERROR, NEXT, SUBSCRIBE}
+
+    }
+
+}
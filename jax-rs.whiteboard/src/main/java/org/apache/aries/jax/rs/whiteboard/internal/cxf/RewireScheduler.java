@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Coalesces rewire requests. A rewire runs once no further request has
+ * arrived for the quiet period, or once the maximum delay since the first
+ * pending request has elapsed, whichever comes first. The rewire receives
+ * the number of requests it absorbed.
+ */
+public class RewireScheduler {
+
+    public RewireScheduler(
+        ScheduledExecutorService executor, long quietPeriod, long maxDelay,
+        IntConsumer rewire) {
+
+        _executor = executor;
+        _quietPeriod = quietPeriod;
+        _maxDelay = Math.max(quietPeriod, maxDelay);
+        _rewire = rewire;
+    }
+
+    public synchronized void close() {
+        _closed = true;
+
+        cancel();
+    }
+
+    public synchronized void schedule() {
+        if (_closed) {
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        if (_pending++ == 0) {
+            _deadline = now + TimeUnit.MILLISECONDS.toNanos(_maxDelay);
+        }
+
+        cancel();
+
+        long delay = Math.min(
+            TimeUnit.MILLISECONDS.toNanos(_quietPeriod), _deadline - now);
+
+        _future = _executor.schedule(
+            this::run, Math.max(0, delay), TimeUnit.NANOSECONDS);
+    }
+
+    private void cancel() {
+        if (_future != null) {
+            _future.cancel(false);
+
+            _future = null;
+        }
+    }
+
+    private void run() {
+        int pending;
+
+        synchronized (this) {
+            if (_closed || _pending == 0) {
+                return;
+            }
+
+            pending = _pending;
+
+            _pending = 0;
+            _future = null;
+        }
+
+        _rewire.accept(pending);
+    }
+
+    private boolean _closed;
+    private long _deadline;
+    private final ScheduledExecutorService _executor;
+    private ScheduledFuture<?> _future;
+    private final long _maxDelay;
+    private int _pending;
+    private final long _quietPeriod;
+    private final IntConsumer _rewire;
+
+}
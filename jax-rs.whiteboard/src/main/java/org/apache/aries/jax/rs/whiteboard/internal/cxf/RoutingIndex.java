@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cxf.jaxrs.JAXRSServiceImpl;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+
+/**
+ * Trie over the leading literal segments of the root resource templates of
+ * a service. A root resource can only match a path that starts with the
+ * literal segments of its template, so the resources stored along the
+ * segments of a path are the only candidates for it. Every node keeps a
+ * view of the service restricted to those candidates, in the order of the
+ * service, so looking a path up only walks its segments.
+ */
+public class RoutingIndex {
+
+    public RoutingIndex(JAXRSServiceImpl service) {
+        _service = service;
+
+        List<ClassResourceInfo> classResourceInfos = new ArrayList<>(
+            service.getClassResourceInfos());
+
+        _root = new Node();
+
+        for (int i = 0; i < classResourceInfos.size(); i++) {
+            Node node = _root;
+
+            for (String segment : getLiteralSegments(
+                    classResourceInfos.get(i).getURITemplate().getValue())) {
+
+                node = node._children.computeIfAbsent(
+                    segment, __ -> new Node());
+            }
+
+            node._indexes.add(i);
+        }
+
+        _root.index(
+            classResourceInfos, new ArrayList<>(), service,
+            classResourceInfos.size());
+    }
+
+    /**
+     * Returns the root resources that may match {@code path}.
+     */
+    public List<ClassResourceInfo> getCandidates(String path) {
+        return getService(path).getClassResourceInfos();
+    }
+
+    /**
+     * Returns a view of the service that only holds the root resources that
+     * may match {@code path}, or the service itself when the index can not
+     * rule any of them out.
+     */
+    public JAXRSServiceImpl getService(String path) {
+        Node node = _root;
+        Node candidate = _root;
+
+        int start = 0;
+        int length = path == null ? 0 : path.length();
+
+        while (start < length) {
+            int end = path.indexOf('/', start);
+
+            if (end < 0) {
+                end = length;
+            }
+
+            int matrix = path.indexOf(';', start);
+
+            int segmentEnd = matrix >= 0 && matrix < end ? matrix : end;
+
+            if (segmentEnd > start) {
+                node = node._children.get(path.substring(start, segmentEnd));
+
+                if (node == null) {
+                    break;
+                }
+
+                if (!node._indexes.isEmpty()) {
+                    candidate = node;
+                }
+            }
+
+            start = end + 1;
+        }
+
+        return candidate._view == null ? _service : candidate._view;
+    }
+
+    static List<String> getLiteralSegments(String template) {
+        List<String> segments = new ArrayList<>();
+
+        for (String segment : template.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+
+            if (!isLiteral(segment)) {
+                break;
+            }
+
+            segments.add(segment);
+        }
+
+        return segments;
+    }
+
+    private static boolean isLiteral(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+                (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_' ||
+                c == '~') {
+
+                continue;
+            }
+
+            return false;
+        }
+
+        return true;
+    }
+
+    private final Node _root;
+    private final JAXRSServiceImpl _service;
+
+    private static class Node {
+
+        void index(
+            List<ClassResourceInfo> classResourceInfos, List<Integer> inherited,
+            JAXRSServiceImpl service, int total) {
+
+            List<Integer> indexes = new ArrayList<>(inherited);
+
+            indexes.addAll(_indexes);
+
+            indexes.sort(null);
+
+            if (!_indexes.isEmpty() && indexes.size() < total) {
+                List<ClassResourceInfo> candidates = new ArrayList<>(
+                    indexes.size());
+
+                for (int index : indexes) {
+                    candidates.add(classResourceInfos.get(index));
+                }
+
+                _view = createView(service, candidates);
+            }
+
+            for (Node child : _children.values()) {
+                child.index(classResourceInfos, indexes, service, total);
+            }
+        }
+
+        private static JAXRSServiceImpl createView(
+            JAXRSServiceImpl service, List<ClassResourceInfo> candidates) {
+
+            JAXRSServiceImpl view = new JAXRSServiceImpl(
+                candidates, service.getName());
+
+            view.putAll(service);
+            view.setDataBinding(service.getDataBinding());
+            view.setExecutor(service.getExecutor());
+            view.setInvoker(service.getInvoker());
+
+            return view;
+        }
+
+        private final Map<String, Node> _children = new HashMap<>();
+        private final List<Integer> _indexes = new ArrayList<>();
+        private JAXRSServiceImpl _view;
+
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.jaxrs.JAXRSServiceImpl;
+import org.apache.cxf.jaxrs.interceptor.JAXRSInInterceptor;
+import org.apache.cxf.jaxrs.provider.ServerProviderFactory;
+import org.apache.cxf.jaxrs.utils.HttpUtils;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.service.Service;
+
+/**
+ * Narrows the root resources {@link JAXRSInInterceptor} matches a request
+ * against to those that share its literal prefix. The service of the
+ * exchange is replaced by a view from the {@link RoutingIndex} while the
+ * root resource is selected, and restored right after by
+ * {@link #getRestoreInterceptor()}. Selection among the remaining candidates
+ * is left to CXF, and so to the resource comparator of the endpoint. Views
+ * share the invoker, executor and properties of the service, so a response
+ * written without restoring the service, as when no resource matches, is
+ * unaffected.
+ */
+public class RoutingInterceptor extends AbstractPhaseInterceptor<Message> {
+
+    public RoutingInterceptor() {
+        super(Phase.UNMARSHAL);
+
+        addBefore(JAXRSInInterceptor.class.getName());
+    }
+
+    public AbstractPhaseInterceptor<Message> getRestoreInterceptor() {
+        return _restoreInterceptor;
+    }
+
+    @Override
+    public void handleMessage(Message message) {
+        RoutingIndex routingIndex = _routingIndex;
+
+        if (routingIndex == null) {
+            return;
+        }
+
+        Exchange exchange = message.getExchange();
+
+        Service service = exchange.getService();
+
+        JAXRSServiceImpl view = routingIndex.getService(
+            HttpUtils.getPathToMatch(message, true));
+
+        if (view != service) {
+            exchange.put(ROUTED_SERVICE, service);
+            exchange.put(Service.class, view);
+        }
+    }
+
+    /**
+     * Indexes the root resources {@code endpoint} holds right now. Called
+     * whenever they change. Pre-matching filters may change the path that is
+     * matched, so endpoints that have any are not narrowed.
+     */
+    public void update(Endpoint endpoint) {
+        ServerProviderFactory serverProviderFactory =
+            (ServerProviderFactory)endpoint.get(
+                ServerProviderFactory.class.getName());
+
+        if ((serverProviderFactory != null) &&
+            !serverProviderFactory.
+                getPreMatchContainerRequestFilters().isEmpty()) {
+
+            _routingIndex = null;
+
+            return;
+        }
+
+        _routingIndex = new RoutingIndex(
+            (JAXRSServiceImpl)endpoint.getService());
+    }
+
+    private static final String ROUTED_SERVICE =
+        RoutingInterceptor.class.getName() + ".routed.service";
+
+    private final AbstractPhaseInterceptor<Message> _restoreInterceptor =
+        new AbstractPhaseInterceptor<Message>(
+            RoutingInterceptor.class.getName() + ".restore", Phase.UNMARSHAL) {
+
+            {
+                addAfter(JAXRSInInterceptor.class.getName());
+            }
+
+            @Override
+            public void handleMessage(Message message) {
+                Exchange exchange = message.getExchange();
+
+                Service service = (Service)exchange.remove(ROUTED_SERVICE);
+
+                if (service != null) {
+                    exchange.put(Service.class, service);
+                }
+            }
+
+        };
+
+    private volatile RoutingIndex _routingIndex;
+
+}
@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.endpoint.ServerImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.transport.Conduit;
+import org.apache.cxf.transport.Destination;
+import org.apache.cxf.transport.MessageObserver;
+import org.apache.cxf.ws.addressing.EndpointReferenceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes successive CXF servers of an application on the same
+ * destination. A new server is started off to the side and then replaces
+ * the observer of the destination in a single step, so every request is
+ * served either by the previous server or by the new one. The previous
+ * server is destroyed once the requests it was already serving complete.
+ */
+public class ServerPublisher {
+
+    /**
+     * Destroys the published server right away and runs every pending
+     * release. Servers that are still draining are destroyed when their last
+     * request completes.
+     */
+    public synchronized void close() {
+        if (_current != null) {
+            _current.addReleases(_releases);
+
+            _current.refuse();
+
+            _current.destroy(false);
+
+            _current = null;
+        }
+
+        runAll(_releases);
+    }
+
+    public synchronized void publish(Server server) {
+        ServerImpl next = (ServerImpl)server;
+
+        Generation previous = _current;
+
+        if (previous == null ||
+            next.getDestination() != previous._destination) {
+
+            if (previous != null) {
+                previous.addReleases(_releases);
+
+                previous.refuse();
+
+                previous.destroy(false);
+            }
+
+            next.start();
+
+            Destination destination = next.getDestination();
+
+            Generation generation = new Generation(
+                next, destination, destination.getMessageObserver());
+
+            _current = generation;
+
+            destination.setMessageObserver(generation::onMessage);
+
+            return;
+        }
+
+        Destination destination = previous._destination;
+
+        ParkedDestination parkedDestination = new ParkedDestination(
+            destination);
+
+        next.setDestination(parkedDestination);
+
+        next.start();
+
+        Generation generation = new Generation(
+            next, destination, parkedDestination.getMessageObserver());
+
+        _current = generation;
+
+        destination.setMessageObserver(generation::onMessage);
+
+        next.setDestination(destination);
+
+        previous.addReleases(_releases);
+
+        previous.retire();
+    }
+
+    /**
+     * Runs {@code releases} once the currently published server has been
+     * destroyed, or right away if there is none.
+     */
+    public synchronized void release(Collection<Runnable> releases) {
+        if (_current == null) {
+            runAll(new ArrayList<>(releases));
+        }
+        else {
+            _releases.addAll(releases);
+        }
+    }
+
+    /**
+     * Destroys the published server right away, leaving the destination
+     * without server.
+     */
+    public synchronized void unpublish() {
+        close();
+    }
+
+    private static void runAll(Collection<Runnable> runnables) {
+        for (Runnable runnable : runnables) {
+            try {
+                runnable.run();
+            }
+            catch (Exception e) {
+                if (_log.isWarnEnabled()) {
+                    _log.warn("Could not release service", e);
+                }
+            }
+        }
+
+        runnables.clear();
+    }
+
+    private static final int _RETIRED = Integer.MIN_VALUE;
+
+    private static final Logger _log = LoggerFactory.getLogger(
+        ServerPublisher.class);
+
+    private volatile Generation _current;
+    private final List<Runnable> _releases = new ArrayList<>();
+
+    /**
+     * A published server and the requests it serves. A request takes a lease
+     * on the generation it was dispatched to, and is handed over to the
+     * current generation when that one has been retired in the meantime, so
+     * a server is never destroyed while it is admitting requests.
+     */
+    private class Generation {
+
+        Generation(
+            ServerImpl server, Destination destination,
+            MessageObserver messageObserver) {
+
+            _server = server;
+            _destination = destination;
+            _messageObserver = messageObserver;
+        }
+
+        void addReleases(List<Runnable> releases) {
+            _releases.addAll(releases);
+
+            releases.clear();
+        }
+
+        void destroy(boolean parked) {
+            if (!_destroyed.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                if (parked) {
+                    _server.setDestination(new ParkedDestination(_destination));
+                }
+
+                _server.destroy();
+            }
+            finally {
+                runAll(_releases);
+            }
+        }
+
+        void onMessage(Message message) {
+            Generation generation = this;
+
+            while (!generation.lease()) {
+                Generation current = _current;
+
+                if ((current == null) || (current == generation) ||
+                    (current._destination != _destination)) {
+
+                    if (_log.isDebugEnabled()) {
+                        _log.debug(
+                            "No server left to serve a request on {}",
+                            _destination.getAddress());
+                    }
+
+                    return;
+                }
+
+                generation = current;
+            }
+
+            try {
+                generation._messageObserver.onMessage(message);
+            }
+            finally {
+                if (generation._leases.decrementAndGet() == _RETIRED) {
+                    generation.destroy(true);
+                }
+            }
+        }
+
+        /**
+         * Refuses new requests, and destroys the server once the requests it
+         * already admitted complete.
+         */
+        void retire() {
+            if (refuse() == 0) {
+                destroy(true);
+            }
+        }
+
+        /**
+         * Refuses new requests and returns the number of requests in flight.
+         */
+        int refuse() {
+            int leases = _leases.getAndUpdate(l -> l | _RETIRED);
+
+            return leases & ~_RETIRED;
+        }
+
+        private boolean lease() {
+            while (true) {
+                int leases = _leases.get();
+
+                if ((leases & _RETIRED) != 0) {
+                    return false;
+                }
+
+                if (_leases.compareAndSet(leases, leases + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private final Destination _destination;
+        private final AtomicBoolean _destroyed = new AtomicBoolean();
+        private final AtomicInteger _leases = new AtomicInteger();
+        private final MessageObserver _messageObserver;
+        private final List<Runnable> _releases = new ArrayList<>();
+        private final ServerImpl _server;
+
+    }
+
+    /**
+     * Stands in for the shared destination while a server is started or
+     * destroyed, so that neither operation touches the live destination.
+     */
+    private static class ParkedDestination implements Destination {
+
+        ParkedDestination(Destination destination) {
+            _destination = destination;
+        }
+
+        @Override
+        public EndpointReferenceType getAddress() {
+            return _destination.getAddress();
+        }
+
+        @Override
+        public Conduit getBackChannel(Message inMessage) {
+            return null;
+        }
+
+        @Override
+        public MessageObserver getMessageObserver() {
+            return _messageObserver;
+        }
+
+        @Override
+        public void setMessageObserver(MessageObserver messageObserver) {
+            _messageObserver = messageObserver;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        private final Destination _destination;
+        private volatile MessageObserver _messageObserver;
+
+    }
+
+}
@@ -31,17 +31,27 @@ public class ServiceReferenceFilterProviderInfo<T>
         CachingServiceReference<?> serviceReference,
         Class<?> resourceClass, Class<?> serviceClass, T provider, Bus bus,
         Set<String> nameBindings, boolean dynamic, Map<Class<?>, Integer>
-            supportedContracts) {
+            supportedContracts, int rankOrdinal) {
 
         super(resourceClass, serviceClass, provider, bus, nameBindings,
             dynamic, supportedContracts);
 
         _serviceReference = serviceReference;
+        _rankOrdinal = rankOrdinal;
+    }
+
+    /**
+     * Position of the service among the extensions of the application,
+     * lowest first for the service that sorts first.
+     */
+    public int getRankOrdinal() {
+        return _rankOrdinal;
     }
 
     public CachingServiceReference<?> getServiceReference() {
         return _serviceReference;
     }
 
+    private final int _rankOrdinal;
     private CachingServiceReference<?> _serviceReference;
 }
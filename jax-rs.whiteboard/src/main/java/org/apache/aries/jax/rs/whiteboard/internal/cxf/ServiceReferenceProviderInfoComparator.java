@@ -21,7 +21,13 @@ import org.apache.aries.component.dsl.CachingServiceReference;
 import org.apache.cxf.jaxrs.model.ProviderInfo;
 import org.apache.cxf.jaxrs.provider.ProviderFactory.ProviderInfoClassComparator;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class ServiceReferenceProviderInfoComparator implements
     Comparator<ProviderInfo<?>> {
@@ -32,19 +38,39 @@ public class ServiceReferenceProviderInfoComparator implements
         _providerInfoClassComparator = providerInfoClassComparator;
     }
 
-    @Override
+    /**
+     * Numbers {@code serviceReferences} in the order extensions are sorted,
+     * highest ranked first, so that sorting their provider infos does not
+     * read service properties.
+     */
     @SuppressWarnings({ "rawtypes", "unchecked" })
+    public static Map<CachingServiceReference<?>, Integer> getRankOrdinals(
+        Collection<? extends CachingServiceReference<?>> serviceReferences) {
+
+        List<CachingServiceReference> sorted = new ArrayList<>(
+            serviceReferences);
+
+        sorted.sort(Collections.reverseOrder());
+
+        Map<CachingServiceReference<?>, Integer> rankOrdinals =
+            new HashMap<>();
+
+        for (int i = 0; i < sorted.size(); i++) {
+            rankOrdinals.put(sorted.get(i), i);
+        }
+
+        return rankOrdinals;
+    }
+
+    @Override
     public int compare(ProviderInfo<?> pi1, ProviderInfo<?> pi2) {
         if (pi1 instanceof ServiceReferenceFilterProviderInfo<?>) {
             if (pi2 instanceof ServiceReferenceFilterProviderInfo<?>) {
-                CachingServiceReference serviceReference1 =
-                    ((ServiceReferenceFilterProviderInfo) pi1).
-                        getServiceReference();
-                CachingServiceReference serviceReference2 =
-                    ((ServiceReferenceFilterProviderInfo) pi2).
-                        getServiceReference();
-
-                return serviceReference2.compareTo(serviceReference1);
+                return Integer.compare(
+                    ((ServiceReferenceFilterProviderInfo<?>)pi1).
+                        getRankOrdinal(),
+                    ((ServiceReferenceFilterProviderInfo<?>)pi2).
+                        getRankOrdinal());
             }
             else {
                 return -1;
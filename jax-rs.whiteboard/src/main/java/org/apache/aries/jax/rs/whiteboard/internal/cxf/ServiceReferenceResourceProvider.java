@@ -23,4 +23,13 @@ public interface ServiceReferenceResourceProvider {
 
     CachingServiceReference<?> getImmutableServiceReference();
 
+    /**
+     * Position of the provider among those of its application, lowest first
+     * for the highest ranked service. Providers with the same ranking share
+     * it.
+     */
+    int getRankOrdinal();
+
+    void setRankOrdinal(int rankOrdinal);
+
 }
@@ -36,5 +36,16 @@ public class SingletonServiceReferenceResourceProvider
         return _cachingServiceReference;
     }
 
+    @Override
+    public int getRankOrdinal() {
+        return _rankOrdinal;
+    }
+
+    @Override
+    public void setRankOrdinal(int rankOrdinal) {
+        _rankOrdinal = rankOrdinal;
+    }
+
     private final CachingServiceReference<?> _cachingServiceReference;
+    private volatile int _rankOrdinal;
 }
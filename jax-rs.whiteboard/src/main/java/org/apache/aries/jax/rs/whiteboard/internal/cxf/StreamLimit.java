@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.ws.rs.ServiceUnavailableException;
+
+/**
+ * Limits the responses an application streams from publishers at once. Each
+ * of them holds a container thread for as long as it is written, and none
+ * is counted by the admission control of the whiteboard, so this limit is
+ * all that keeps long lived streams from taking every container thread.
+ * Streams over the limit are rejected with {@code 503 Service Unavailable}.
+ */
+public class StreamLimit {
+
+    public StreamLimit(int limit, long retryAfter, LongAdder rejected) {
+        _limit = limit;
+        _permits = new Semaphore(limit);
+        _retryAfter = retryAfter;
+        _rejected = rejected;
+    }
+
+    /**
+     * Takes a slot for a stream about to be written, which must be given
+     * back through {@link #release()} once it is.
+     *
+     * @throws ServiceUnavailableException when every slot is taken
+     */
+    public void acquire() {
+        if (!_permits.tryAcquire()) {
+            reject();
+        }
+    }
+
+    /**
+     * Rejects a publisher before its response is built when every slot is
+     * taken, so it is not answered with a stream that cannot be written.
+     *
+     * @throws ServiceUnavailableException when every slot is taken
+     */
+    public void check() {
+        if (_permits.availablePermits() <= 0) {
+            reject();
+        }
+    }
+
+    public long getActive() {
+        return _limit - _permits.availablePermits();
+    }
+
+    public void release() {
+        _permits.release();
+    }
+
+    private void reject() {
+        _rejected.increment();
+
+        throw new ServiceUnavailableException(_retryAfter);
+    }
+
+    private final int _limit;
+    private final Semaphore _permits;
+    private final LongAdder _rejected;
+    private final long _retryAfter;
+
+}
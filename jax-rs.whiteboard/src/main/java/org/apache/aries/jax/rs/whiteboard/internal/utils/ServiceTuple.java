@@ -27,6 +27,7 @@ public class ServiceTuple<T> implements Comparable<ServiceTuple<T>> {
     private final CachingServiceReference<T> _serviceReference;
     private ServiceObjects<T> _serviceObjects;
     private AtomicReference<T> _service;
+    private volatile boolean _available = true;
 
     ServiceTuple(
         CachingServiceReference<T> cachingServiceReference,
@@ -50,12 +51,19 @@ public class ServiceTuple<T> implements Comparable<ServiceTuple<T>> {
         }
     }
 
-    public void refresh() {
-        dispose();
-
-        if (isAvailable()) {
-            _service.set(_serviceObjects.getService());
-        }
+    /**
+     * Replaces the service with a fresh one and returns the action releasing
+     * the replaced service, so it can be released once no longer in use.
+     */
+    public Runnable renew() {
+        T service = _service.getAndSet(
+            isAvailable() ? _serviceObjects.getService() : null);
+
+        return () -> {
+            if (service != null) {
+                _serviceObjects.ungetService(service);
+            }
+        };
     }
 
     public T getService() {
@@ -85,8 +93,17 @@ public class ServiceTuple<T> implements Comparable<ServiceTuple<T>> {
         return _serviceReference;
     }
 
+    /**
+     * Whether the service is still registered. It is checked once, when the
+     * service stops being tracked, so calling this is cheap enough for every
+     * request.
+     */
     public boolean isAvailable() {
-        return Utils.isAvailable(_serviceObjects.getServiceReference());
+        return _available;
+    }
+
+    void updateAvailability() {
+        _available = Utils.isAvailable(_serviceObjects.getServiceReference());
     }
 
 }
@@ -26,6 +26,7 @@ import org.osgi.framework.ServiceRegistration;
 import org.slf4j.Logger;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Dictionary;
 import java.util.HashMap;
@@ -47,6 +48,9 @@ import static org.osgi.service.jaxrs.whiteboard.JaxrsWhiteboardConstants.JAX_RS_
  */
 public class Utils {
 
+    public static final String PROPRIETARY_PROPERTY_PREFIX =
+        "org.apache.aries.jax.rs.whiteboard.";
+
     public static String[] canonicalize(Object propertyValue) {
         if (propertyValue == null) {
             return new String[0];
@@ -128,6 +132,53 @@ public class Utils {
         return properties;
     }
 
+    public static boolean getBoolean(Object value, boolean defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+
+        if (value instanceof Boolean) {
+            return (Boolean)value;
+        }
+
+        return Boolean.parseBoolean(String.valueOf(value).trim());
+    }
+
+    public static long getLong(Object value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+
+        if (value instanceof Number) {
+            return ((Number)value).longValue();
+        }
+
+        try {
+            return Long.parseLong(String.valueOf(value).trim());
+        }
+        catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Looks a setting up in the application (or service) properties first,
+     * using the proprietary {@code org.apache.aries.jax.rs.whiteboard.}
+     * prefix, and falls back to the whiteboard configuration under the bare
+     * key.
+     */
+    public static Object getSetting(
+        Map<String, ?> properties, Map<String, ?> configuration, String key) {
+
+        Object value = properties.get(PROPRIETARY_PROPERTY_PREFIX + key);
+
+        if (value == null) {
+            value = configuration.get(key);
+        }
+
+        return value;
+    }
+
     public static String getString(Object string) {
         if (string == null) {
             return "";
@@ -214,7 +265,9 @@ public class Utils {
                 return
                     just(new ServiceTuple<>(
                             serviceReference, serviceObjects, service)).
-                    effects(__ -> {}, ServiceTuple::dispose).
+                    effects(
+                        __ -> {}, __ -> {}, ServiceTuple::updateAvailability,
+                        ServiceTuple::dispose).
                     effects(
                         ifDebugEnabled(
                             log,
@@ -244,6 +297,17 @@ public class Utils {
     public static void updateProperty(
         ServiceRegistration<?> serviceRegistration, String key, Object value) {
 
+        updateProperties(
+            serviceRegistration, Collections.singletonMap(key, value));
+    }
+
+    /**
+     * Sets {@code values} on the registration in a single update, so
+     * listeners get a single modification event.
+     */
+    public static void updateProperties(
+        ServiceRegistration<?> serviceRegistration, Map<String, ?> values) {
+
         CachingServiceReference<?> serviceReference =
             new CachingServiceReference<>(serviceRegistration.getReference());
 
@@ -254,7 +318,7 @@ public class Utils {
                 propertyKey, serviceReference.getProperty(propertyKey));
         }
 
-        properties.put(key, value);
+        values.forEach(properties::put);
 
         serviceRegistration.setProperties(properties);
     }
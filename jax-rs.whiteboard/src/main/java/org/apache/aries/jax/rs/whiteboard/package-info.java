@@ -90,7 +90,7 @@
     }
 )
 @Export
-@Version("1.0.0")
+@Version("1.1.0")
 @Requirement(
     name = "osgi.http",
     namespace = ImplementationNamespace.IMPLEMENTATION_NAMESPACE,
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.cxf.jaxrs.client;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.aries.jax.rs.whiteboard.internal.client.ClientBuilderImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.service.jaxrs.client.PromiseRxInvoker;
+import org.osgi.util.promise.Promise;
+
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PromiseRxInvokerImplTest {
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+
+        server.createContext("/echo", exchange -> {
+            byte[] body = read(exchange.getRequestBody());
+
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        server.createContext("/hello", exchange -> {
+            byte[] body = "hello".getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                slow.await(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+
+        client = new ClientBuilderImpl().build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void entitiesAreReadWhenTheResponseArrives() throws Exception {
+        Promise<String> promise = invoker("hello").get(String.class);
+
+        assertEquals("hello", promise.getValue());
+
+        promise = invoker("echo").post(Entity.text("echoed"), String.class);
+
+        assertEquals("echoed", promise.getValue());
+    }
+
+    @Test
+    public void requestsDoNotBlockTheCaller() throws Exception {
+        Promise<Response> promise = invoker("slow").get();
+
+        assertFalse(promise.isDone());
+
+        slow.countDown();
+
+        assertEquals(204, promise.getValue().getStatus());
+    }
+
+    @Test
+    public void responsesAreResolvedWhateverTheirStatus() throws Exception {
+        Promise<Response> promise = invoker("missing").get();
+
+        assertEquals(404, promise.getValue().getStatus());
+    }
+
+    @Test
+    public void errorStatusesFailTypedRequests() throws Exception {
+        Promise<String> promise = invoker("missing").get(String.class);
+
+        assertTrue(promise.getFailure() instanceof NotFoundException);
+    }
+
+    private PromiseRxInvoker invoker(String path) {
+        return client.target(
+            "http://localhost:" + server.getAddress().getPort()
+        ).path(
+            path
+        ).request().rx(PromiseRxInvoker.class);
+    }
+
+    private static byte[] read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        byte[] buffer = new byte[1024];
+
+        int length;
+
+        while ((length = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, length);
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    private Client client;
+    private HttpServer server;
+    private final CountDownLatch slow = new CountDownLatch(1);
+
+}
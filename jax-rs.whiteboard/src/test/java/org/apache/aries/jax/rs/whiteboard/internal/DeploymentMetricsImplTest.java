@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal;
+
+import org.apache.aries.jax.rs.whiteboard.ApplicationMetricsDTO;
+import org.apache.aries.jax.rs.whiteboard.DeploymentMetrics;
+import org.apache.aries.jax.rs.whiteboard.TimingDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DeploymentMetricsImplTest {
+
+    @Test
+    public void recordsTimingsAndTriggers() {
+        final AtomicInteger rewires = new AtomicInteger();
+        final DeploymentMetricsImpl metrics =
+                new DeploymentMetricsImpl(rewires::incrementAndGet);
+
+        metrics.recordTrigger("app", DeploymentMetrics.TRIGGER_RESOURCE);
+        metrics.recordTrigger("app", DeploymentMetrics.TRIGGER_RESOURCE);
+        metrics.record("app", DeploymentMetrics.REWIRE, millis(3));
+        metrics.record("app", DeploymentMetrics.REWIRE, millis(5));
+        metrics.record("app", DeploymentMetrics.REWIRE, millis(20000));
+        metrics.record("app", DeploymentMetrics.CREATE_BUS, millis(1));
+
+        assertEquals(3, rewires.get());
+        assertEquals(3, metrics.getRewireCount());
+        assertEquals(20008, metrics.getRewireTime());
+
+        final ApplicationMetricsDTO[] dtos = metrics.getApplicationMetricsDTOs();
+        assertEquals(1, dtos.length);
+        assertEquals("app", dtos[0].name);
+        assertEquals(2L, dtos[0].triggers.get(DeploymentMetrics.TRIGGER_RESOURCE));
+
+        final TimingDTO rewire = dtos[0].timings[1];
+        assertEquals(DeploymentMetrics.REWIRE, rewire.operation);
+        assertEquals(3, rewire.count);
+        assertEquals(20000, rewire.max, 0.001);
+        assertEquals(20008, rewire.total, 0.001);
+        assertArrayEquals(
+                new long[] {0, 0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1},
+                rewire.histogram);
+    }
+
+    @Test
+    public void applicationsAreDroppedWhenTheyLeave() {
+        final DeploymentMetricsImpl metrics = new DeploymentMetricsImpl();
+
+        // the registrator of an updated application may start before the
+        // previous one is closed
+        metrics.addApplication("app");
+        metrics.addApplication("app");
+        metrics.record("app", DeploymentMetrics.REWIRE, millis(1));
+
+        metrics.removeApplication("app");
+        assertEquals(1, metrics.getApplicationMetricsDTOs().length);
+
+        metrics.removeApplication("app");
+        assertEquals(0, metrics.getApplicationMetricsDTOs().length);
+        assertEquals(1, metrics.getRewireCount());
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.bus.extension.ExtensionManagerBus;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class SharedBusesTest {
+
+    @Test
+    public void applicationsWithTheSameExtensionsShareABus() {
+        final Bus first = sharedBuses.acquire(key("a", 1L), busFactory);
+        final Bus second = sharedBuses.acquire(key("a", 1L), busFactory);
+
+        assertSame(first, second);
+        assertEquals(1, created.get());
+
+        sharedBuses.release(first);
+        assertEquals(Bus.BusState.INITIAL, first.getState());
+        assertEquals(0, released.get());
+
+        sharedBuses.release(second);
+        assertEquals(Bus.BusState.SHUTDOWN, first.getState());
+        assertEquals(1, released.get());
+    }
+
+    @Test
+    public void applicationsWithDifferentExtensionsGetTheirOwnBus() {
+        final Bus first = sharedBuses.acquire(key("a", 1L), busFactory);
+        final Bus second = sharedBuses.acquire(
+                key("a", 1L, "b", 2L), busFactory);
+        final Bus third = sharedBuses.acquire(key("a", 3L), busFactory);
+
+        assertNotSame(first, second);
+        assertNotSame(first, third);
+        assertEquals(3, created.get());
+
+        sharedBuses.release(second);
+        assertEquals(Bus.BusState.SHUTDOWN, second.getState());
+        assertEquals(Bus.BusState.INITIAL, first.getState());
+        assertEquals(Bus.BusState.INITIAL, third.getState());
+        assertEquals(1, released.get());
+    }
+
+    @Test
+    public void lastReleaseLetsTheNextApplicationCreateANewBus() {
+        final Bus first = sharedBuses.acquire(key("a", 1L), busFactory);
+        sharedBuses.release(first);
+
+        final Bus second = sharedBuses.acquire(key("a", 1L), busFactory);
+
+        assertNotSame(first, second);
+        assertEquals(2, created.get());
+
+        // a bus already shut down is not released twice
+        sharedBuses.release(first);
+        assertEquals(Bus.BusState.INITIAL, second.getState());
+        assertEquals(1, released.get());
+    }
+
+    private static Map<String, Object> key(final Object... entries) {
+        final Map<String, Object> key = new TreeMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            key.put((String) entries[i], entries[i + 1]);
+        }
+        return key;
+    }
+
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger released = new AtomicInteger();
+    private final SharedBuses sharedBuses = new SharedBuses();
+
+    private final Function<List<Runnable>, Bus> busFactory = releases -> {
+        created.incrementAndGet();
+        releases.add(released::incrementAndGet);
+        return new ExtensionManagerBus();
+    };
+
+}
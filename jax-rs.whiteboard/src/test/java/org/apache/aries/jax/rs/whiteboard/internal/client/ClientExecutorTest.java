@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.client;
+
+import org.apache.aries.jax.rs.whiteboard.ApplicationMetricsDTO;
+import org.apache.aries.jax.rs.whiteboard.DeploymentMetrics;
+import org.apache.aries.jax.rs.whiteboard.internal.DeploymentMetricsImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClientExecutorTest {
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (clientExecutor != null) {
+            clientExecutor.shutdownNow();
+            clientExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void queueDepthAndActiveTasksAreReported() throws Exception {
+        clientExecutor = new ClientExecutor(1, 1, false, deploymentMetrics);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        clientExecutor.execute(() -> {
+            started.countDown();
+
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        started.await(10, TimeUnit.SECONDS);
+
+        Future<?> queued = clientExecutor.submit(() -> {});
+
+        assertThrows(
+            RejectedExecutionException.class,
+            () -> clientExecutor.execute(() -> {}));
+
+        ApplicationMetricsDTO applicationMetricsDTO = getMetrics();
+
+        assertEquals(
+            1L,
+            applicationMetricsDTO.gauges.get(
+                DeploymentMetrics.GAUGE_ACTIVE_TASKS));
+        assertEquals(
+            1L,
+            applicationMetricsDTO.gauges.get(
+                DeploymentMetrics.GAUGE_QUEUED_TASKS));
+        assertEquals(
+            1L,
+            applicationMetricsDTO.counters.get(
+                DeploymentMetrics.COUNTER_REJECTED_TASKS));
+
+        release.countDown();
+
+        queued.get(10, TimeUnit.SECONDS);
+
+        clientExecutor.shutdown();
+        clientExecutor.awaitTermination(10, TimeUnit.SECONDS);
+
+        applicationMetricsDTO = getMetrics();
+
+        assertEquals(2, applicationMetricsDTO.timings[0].count);
+        assertEquals(
+            DeploymentMetrics.TASK, applicationMetricsDTO.timings[0].operation);
+        assertTrue(applicationMetricsDTO.gauges.isEmpty());
+    }
+
+    @Test
+    public void configurationsResizeTheExecutorInPlace() throws Exception {
+        clientExecutor = new ClientExecutor(1, 0, false, deploymentMetrics);
+
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<?> first = clientExecutor.submit(() -> await(release));
+
+        clientExecutor.configure(2, 0, false);
+
+        Future<?> second = clientExecutor.submit(() -> await(release));
+
+        assertThrows(
+            RejectedExecutionException.class,
+            () -> clientExecutor.execute(() -> {}));
+
+        release.countDown();
+
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void replacedExecutorsRunTheTasksTheyHold() throws Exception {
+        clientExecutor = new ClientExecutor(1, 1, false, deploymentMetrics);
+
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<?> running = clientExecutor.submit(() -> await(release));
+        Future<?> queued = clientExecutor.submit(() -> {});
+
+        clientExecutor.configure(1, 10, false);
+
+        Future<?> next = clientExecutor.submit(() -> {});
+
+        next.get(10, TimeUnit.SECONDS);
+
+        release.countDown();
+
+        running.get(10, TimeUnit.SECONDS);
+        queued.get(10, TimeUnit.SECONDS);
+
+        clientExecutor.shutdown();
+
+        assertTrue(clientExecutor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void sharedExecutorsCannotBeShutDown() throws Exception {
+        clientExecutor = new ClientExecutor(1, 0, false, deploymentMetrics);
+
+        ExecutorService executorService = new SharedExecutorService(
+            clientExecutor);
+
+        assertThrows(IllegalStateException.class, executorService::shutdown);
+        assertThrows(
+            IllegalStateException.class, executorService::shutdownNow);
+        assertFalse(clientExecutor.isShutdown());
+
+        assertEquals(
+            "done",
+            executorService.submit(() -> "done").get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void tasksRunOnNamedThreads() throws Exception {
+        assertThreadName(false);
+    }
+
+    @Test
+    public void tasksRunOnNamedVirtualThreads() throws Exception {
+        assertThreadName(true);
+    }
+
+    private void assertThreadName(boolean virtual) throws Exception {
+        clientExecutor = new ClientExecutor(2, 0, virtual, deploymentMetrics);
+
+        String threadName = clientExecutor.submit(
+            () -> Thread.currentThread().getName()
+        ).get(10, TimeUnit.SECONDS);
+
+        assertTrue(
+            threadName.startsWith("Aries JAX-RS Whiteboard client "),
+            threadName);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ApplicationMetricsDTO getMetrics() {
+        for (ApplicationMetricsDTO applicationMetricsDTO :
+                deploymentMetrics.getApplicationMetricsDTOs()) {
+
+            if (applicationMetricsDTO.name.equals(ClientExecutor.NAME)) {
+                return applicationMetricsDTO;
+            }
+        }
+
+        throw new AssertionError("No metrics for " + ClientExecutor.NAME);
+    }
+
+    private ClientExecutor clientExecutor;
+    private final DeploymentMetricsImpl deploymentMetrics =
+        new DeploymentMetricsImpl();
+
+}
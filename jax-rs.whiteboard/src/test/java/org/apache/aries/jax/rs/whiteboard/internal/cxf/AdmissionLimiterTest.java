@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.apache.aries.jax.rs.whiteboard.internal.cxf.AdmissionLimiter.Priority;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdmissionLimiterTest {
+
+    @Test
+    public void lowPriorityRequestsAreShedFirst() {
+        AdmissionLimiter admissionLimiter = new AdmissionLimiter(
+            4, 1, 4, 1000);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(admissionLimiter.acquire(Priority.LOW));
+        }
+
+        assertFalse(admissionLimiter.acquire(Priority.LOW));
+        assertTrue(admissionLimiter.acquire(Priority.NORMAL));
+        assertFalse(admissionLimiter.acquire(Priority.NORMAL));
+        assertTrue(admissionLimiter.acquire(Priority.HIGH));
+
+        assertEquals(5, admissionLimiter.getInFlight());
+    }
+
+    @Test
+    public void theLimitAdaptsToLatency() {
+        AdmissionLimiter admissionLimiter = new AdmissionLimiter(
+            10, 5, 12, 1000);
+
+        long fast = TimeUnit.MILLISECONDS.toNanos(10);
+        long slow = TimeUnit.MILLISECONDS.toNanos(2000);
+
+        for (int i = 0; i < 5; i++) {
+            admissionLimiter.acquire(Priority.NORMAL);
+        }
+
+        admissionLimiter.release(fast);
+
+        assertEquals(11, admissionLimiter.getLimit());
+
+        admissionLimiter.release(slow);
+
+        assertEquals(9, admissionLimiter.getLimit());
+
+        admissionLimiter.release(fast);
+
+        assertEquals(9, admissionLimiter.getLimit());
+
+        serve(admissionLimiter, 20, 5, slow);
+
+        assertEquals(5, admissionLimiter.getLimit());
+
+        serve(admissionLimiter, 20, 6, fast);
+
+        assertEquals(12, admissionLimiter.getLimit());
+    }
+
+    @Test
+    public void requestsWithoutLatencyLeaveTheLimit() {
+        AdmissionLimiter admissionLimiter = new AdmissionLimiter(
+            10, 5, 12, 1000);
+
+        serve(admissionLimiter, 3, 8, -1);
+
+        assertEquals(10, admissionLimiter.getLimit());
+        assertEquals(0, admissionLimiter.getInFlight());
+    }
+
+    @Test
+    public void prioritiesAreReadFromProperties() {
+        assertEquals(Priority.LOW, Priority.from(" low "));
+        assertEquals(Priority.HIGH, Priority.from("HIGH"));
+        assertEquals(Priority.NORMAL, Priority.from(null));
+        assertEquals(Priority.NORMAL, Priority.from("urgent"));
+    }
+
+    private static void serve(
+        AdmissionLimiter admissionLimiter, int rounds, int requests,
+        long nanos) {
+
+        for (int i = 0; i < rounds; i++) {
+            for (int j = 0; j < requests; j++) {
+                admissionLimiter.acquire(Priority.HIGH);
+            }
+
+            for (int j = 0; j < requests; j++) {
+                admissionLimiter.release(nanos);
+            }
+        }
+    }
+
+}
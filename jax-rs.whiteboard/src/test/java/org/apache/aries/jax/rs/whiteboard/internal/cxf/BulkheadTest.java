@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BulkheadTest {
+
+    @Test
+    public void requestsOverTheLimitAreRejected() {
+        LongAdder rejected = new LongAdder();
+
+        Bulkhead bulkhead = new Bulkhead(2, 0, 1000, rejected);
+
+        assertTrue(bulkhead.acquire());
+        assertTrue(bulkhead.acquire());
+        assertFalse(bulkhead.acquire());
+
+        assertEquals(2, bulkhead.getInFlight());
+        assertEquals(1, rejected.sum());
+
+        bulkhead.release();
+
+        assertTrue(bulkhead.acquire());
+        assertEquals(1, rejected.sum());
+    }
+
+    @Test
+    public void queuedRequestsWaitForASlot() throws Exception {
+        LongAdder rejected = new LongAdder();
+
+        Bulkhead bulkhead = new Bulkhead(1, 1, 10000, rejected);
+
+        assertTrue(bulkhead.acquire());
+
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(
+            bulkhead::acquire);
+
+        while (bulkhead.getQueued() == 0) {
+            Thread.sleep(1);
+        }
+
+        assertFalse(bulkhead.acquire());
+        assertEquals(1, rejected.sum());
+
+        bulkhead.release();
+
+        assertTrue(queued.get(10, TimeUnit.SECONDS));
+        assertEquals(0, bulkhead.getQueued());
+        assertEquals(1, bulkhead.getInFlight());
+    }
+
+    @Test
+    public void releasedSlotsGoToQueuedRequests() throws Exception {
+        LongAdder rejected = new LongAdder();
+
+        Bulkhead bulkhead = new Bulkhead(1, 1, 2000, rejected);
+
+        assertTrue(bulkhead.acquire());
+
+        CompletableFuture<Boolean> queued = new CompletableFuture<>();
+
+        Thread thread = new Thread(() -> queued.complete(bulkhead.acquire()));
+
+        thread.start();
+
+        while (thread.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        bulkhead.release();
+
+        assertFalse(bulkhead.acquire());
+        assertTrue(queued.get(10, TimeUnit.SECONDS));
+        assertEquals(1, bulkhead.getInFlight());
+    }
+
+    @Test
+    public void queuedRequestsTimeOut() {
+        LongAdder rejected = new LongAdder();
+
+        Bulkhead bulkhead = new Bulkhead(1, 1, 1, rejected);
+
+        assertTrue(bulkhead.acquire());
+        assertFalse(bulkhead.acquire());
+
+        assertEquals(0, bulkhead.getQueued());
+        assertEquals(1, rejected.sum());
+    }
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.apache.aries.component.dsl.CachingServiceReference;
+import org.apache.cxf.jaxrs.ext.ResourceComparator;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.ServiceReference;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ComparableResourceComparatorTest {
+
+    @Test
+    public void ordinalsFollowRanking() {
+        List<SingletonServiceReferenceResourceProvider> providers =
+            Arrays.asList(
+                provider(1, 10), provider(2, null), provider(3, 5),
+                provider(4, 10), provider(5, -1));
+
+        ComparableResourceComparator.assignRankOrdinals(providers);
+
+        assertEquals(
+            Arrays.asList(0, 2, 1, 0, 3),
+            providers.stream().map(
+                SingletonServiceReferenceResourceProvider::getRankOrdinal
+            ).collect(
+                Collectors.toList()
+            ));
+    }
+
+    @Test
+    public void compareByOrdinal() {
+        List<SingletonServiceReferenceResourceProvider> providers =
+            Arrays.asList(provider(1, 1), provider(2, 5), provider(3, 1));
+
+        ComparableResourceComparator.assignRankOrdinals(providers);
+
+        ComparableResourceComparator comparator =
+            new ComparableResourceComparator();
+
+        ClassResourceInfo cri1 = classResourceInfo(providers.get(0));
+        ClassResourceInfo cri2 = classResourceInfo(providers.get(1));
+        ClassResourceInfo cri3 = classResourceInfo(providers.get(2));
+        ClassResourceInfo other = new ClassResourceInfo(Object.class);
+
+        assertTrue(comparator.compare(cri2, cri1, null) < 0);
+        assertTrue(comparator.compare(cri1, cri2, null) > 0);
+        assertEquals(0, comparator.compare(cri1, cri3, null));
+        assertTrue(comparator.compare(cri1, other, null) < 0);
+        assertTrue(comparator.compare(other, cri1, null) > 0);
+    }
+
+    /**
+     * Rank ordinals sort candidates as the service properties the comparator
+     * used to read on every comparison.
+     */
+    @Test
+    public void ordinalsSortLikeServiceProperties() {
+        Random random = new Random(0);
+
+        List<SingletonServiceReferenceResourceProvider> providers =
+            new ArrayList<>();
+
+        for (int i = 0; i < 50; i++) {
+            providers.add(provider(i + 1, random.nextInt(5)));
+        }
+
+        ComparableResourceComparator.assignRankOrdinals(providers);
+
+        List<ClassResourceInfo> candidates = providers.stream().map(
+            ComparableResourceComparatorTest::classResourceInfo
+        ).collect(
+            Collectors.toList()
+        );
+
+        assertEquals(
+            rankings(sort(candidates, new PropertiesResourceComparator())),
+            rankings(sort(candidates, new ComparableResourceComparator())));
+    }
+
+    private static ClassResourceInfo classResourceInfo(
+        SingletonServiceReferenceResourceProvider provider) {
+
+        ClassResourceInfo classResourceInfo = new ClassResourceInfo(
+            Object.class);
+
+        classResourceInfo.setResourceProvider(provider);
+
+        return classResourceInfo;
+    }
+
+    private static SingletonServiceReferenceResourceProvider provider(
+        long serviceId, Integer serviceRanking) {
+
+        Map<String, Object> properties = new HashMap<>();
+
+        properties.put("service.id", serviceId);
+
+        if (serviceRanking != null) {
+            properties.put("service.ranking", serviceRanking);
+        }
+
+        ServiceReference<?> serviceReference =
+            (ServiceReference<?>)Proxy.newProxyInstance(
+                ComparableResourceComparatorTest.class.getClassLoader(),
+                new Class<?>[]{ServiceReference.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "compareTo":
+                            return compare(
+                                properties,
+                                ((ServiceReference<?>)args[0]));
+                        case "getProperty":
+                            return properties.get(args[0]);
+                        case "getPropertyKeys":
+                            return properties.keySet().toArray(new String[0]);
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return properties.toString();
+                        default:
+                            throw new UnsupportedOperationException(
+                                method.getName());
+                    }
+                });
+
+        return new SingletonServiceReferenceResourceProvider(
+            new CachingServiceReference<>(serviceReference), new Object());
+    }
+
+    private static int compare(
+        Map<String, Object> properties, ServiceReference<?> other) {
+
+        int ranking = ranking(properties.get("service.ranking"));
+        int otherRanking = ranking(other.getProperty("service.ranking"));
+
+        if (ranking != otherRanking) {
+            return Integer.compare(ranking, otherRanking);
+        }
+
+        return Long.compare(
+            (Long)other.getProperty("service.id"),
+            (Long)properties.get("service.id"));
+    }
+
+    private static int ranking(Object serviceRanking) {
+        return serviceRanking instanceof Integer ? (Integer)serviceRanking : 0;
+    }
+
+    private static List<Object> rankings(
+        List<ClassResourceInfo> classResourceInfos) {
+
+        return classResourceInfos.stream().map(
+            cri -> ((ServiceReferenceResourceProvider)
+                cri.getResourceProvider()).getImmutableServiceReference(
+                    ).getProperty("service.ranking")
+        ).collect(
+            Collectors.toList()
+        );
+    }
+
+    private static List<ClassResourceInfo> sort(
+        List<ClassResourceInfo> candidates, ResourceComparator comparator) {
+
+        List<ClassResourceInfo> sorted = new ArrayList<>(candidates);
+
+        Collections.shuffle(sorted, new Random(1));
+
+        sorted.sort((cri1, cri2) -> comparator.compare(cri1, cri2, null));
+
+        return sorted;
+    }
+
+    /**
+     * Orders candidates as the comparator did before rank ordinals, reading
+     * the service properties of both references on every comparison.
+     */
+    private static class PropertiesResourceComparator
+        extends ComparableResourceComparator {
+
+        @Override
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        public int compare(
+            ClassResourceInfo cri1, ClassResourceInfo cri2,
+            org.apache.cxf.message.Message message) {
+
+            CachingServiceReference ref1 =
+                ((ServiceReferenceResourceProvider)
+                    cri2.getResourceProvider()).getImmutableServiceReference();
+            CachingServiceReference ref2 =
+                ((ServiceReferenceResourceProvider)
+                    cri1.getResourceProvider()).getImmutableServiceReference();
+
+            Object serviceRanking1 = ref1.getProperty("service.ranking");
+            Object serviceRanking2 = ref2.getProperty("service.ranking");
+
+            if (Objects.equals(serviceRanking1, serviceRanking2)) {
+                return 0;
+            }
+
+            return ref1.compareTo(ref2);
+        }
+
+    }
+
+}
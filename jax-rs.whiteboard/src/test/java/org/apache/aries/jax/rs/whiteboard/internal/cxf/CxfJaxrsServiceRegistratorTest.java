@@ -16,21 +16,61 @@
  */
 package org.apache.aries.jax.rs.whiteboard.internal.cxf;
 
+import org.apache.aries.component.dsl.CachingServiceReference;
+import org.apache.aries.jax.rs.whiteboard.ApplicationClasses;
+import org.apache.aries.jax.rs.whiteboard.internal.AriesJaxrsServiceRuntime;
+import org.apache.aries.jax.rs.whiteboard.internal.DeploymentMetricsImpl;
+import org.apache.aries.jax.rs.whiteboard.internal.utils.ServiceTuple;
+import org.apache.aries.jax.rs.whiteboard.internal.utils.ServiceTuples;
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.bus.extension.ExtensionManagerBus;
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.endpoint.ServerLifeCycleListener;
+import org.apache.cxf.endpoint.ServerLifeCycleManager;
 import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.jaxrs.JAXRSServiceImpl;
 import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
 import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.provider.ServerProviderFactory;
+import org.apache.cxf.message.MessageImpl;
 import org.junit.jupiter.api.Test;
 
 import javax.ws.rs.ApplicationPath;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.core.Application;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.COUNTER_DEBOUNCED_CHANGES;
+import static org.apache.aries.jax.rs.whiteboard.DeploymentMetrics.COUNTER_DEBOUNCED_REWIRES;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class CxfJaxrsServiceRegistratorTest {
@@ -61,6 +101,557 @@ public class CxfJaxrsServiceRegistratorTest {
         assertEquals("/", bean.getAddress());
     }
 
+    @Test
+    public void liveResources() {
+        final JAXRSServerFactoryBean bean = new CxfJaxrsServiceRegistrator(
+                null, null, emptyMap(), null
+        ).createEndpoint(new Application() {
+            @Override
+            public Set<Object> getSingletons() {
+                return singleton(new MyResource());
+            }
+        }, JAXRSServerFactoryBean.class);
+        bean.setStart(false);
+        final Server server = bean.create();
+        final LiveJAXRSServiceFactoryBean serviceFactory =
+                (LiveJAXRSServiceFactoryBean) bean.getServiceFactory();
+        final JAXRSServiceImpl service =
+                (JAXRSServiceImpl) server.getEndpoint().getService();
+
+        final SingletonResourceProvider provider =
+                new SingletonResourceProvider(new OtherResource());
+        final ClassResourceInfo cri = serviceFactory.createRootResourceInfo(
+                OtherResource.class);
+        cri.setResourceProvider(provider);
+        serviceFactory.addRootResourceInfo(cri);
+        assertTrue(service.getClassResourceInfos().contains(cri));
+
+        assertEquals(cri, serviceFactory.removeRootResourceInfo(provider));
+        assertFalse(service.getClassResourceInfos().contains(cri));
+        assertEquals(1, service.getClassResourceInfos().size());
+    }
+
+    @Test
+    public void isolateFailures() {
+        final List<Integer> candidates = IntStream.range(0, 400).boxed()
+                .collect(Collectors.toList());
+        final List<Integer> failing = Arrays.asList(7, 211, 399);
+        final AtomicInteger attempts = new AtomicInteger();
+        final List<Integer> accepted = new ArrayList<>();
+
+        final List<Integer> errored = CxfJaxrsServiceRegistrator.isolateFailures(
+                candidates, accepted, attempt -> {
+                    attempts.incrementAndGet();
+                    return attempt.stream().noneMatch(failing::contains);
+                });
+
+        assertEquals(failing, errored);
+        assertEquals(397, accepted.size());
+        assertFalse(accepted.stream().anyMatch(failing::contains));
+        assertTrue(attempts.get() < 60, "attempts: " + attempts.get());
+    }
+
+    @Test
+    public void isolateFailuresWithoutFailures() {
+        final List<Integer> accepted = new ArrayList<>();
+
+        assertTrue(CxfJaxrsServiceRegistrator.isolateFailures(
+                Arrays.asList(1, 2, 3), accepted, attempt -> true).isEmpty());
+        assertEquals(Arrays.asList(1, 2, 3), accepted);
+    }
+
+    @Test
+    public void enableOnExecutor() {
+        final ExtensionManagerBus bus = new ExtensionManagerBus();
+        final List<Runnable> tasks = new ArrayList<>();
+        final CxfJaxrsServiceRegistrator registrator =
+                new CxfJaxrsServiceRegistrator(bus, null, emptyMap(), null);
+
+        registrator.enable(tasks::add);
+        assertEquals(1, tasks.size());
+        assertFalse(registrator.getDeployment().isDone());
+        assertEquals(Bus.BusState.INITIAL, bus.getState());
+
+        tasks.get(0).run();
+        assertTrue(registrator.getDeployment().isDone());
+        assertEquals(Bus.BusState.RUNNING, bus.getState());
+
+        registrator.close();
+    }
+
+    @Test
+    public void failedDeploymentIsReported() {
+        final ExtensionManagerBus bus = new ExtensionManagerBus();
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Object> errored = new ArrayList<>();
+        final ServiceTuple<Application> application =
+                ServiceTuples.serviceTuple(emptyMap(), () -> new Application() {
+                    @Override
+                    public Set<Object> getSingletons() {
+                        throw new IllegalStateException();
+                    }
+                }, new ArrayList<>());
+        final AriesJaxrsServiceRuntime runtime =
+                new AriesJaxrsServiceRuntime(null) {
+                    @Override
+                    public void addErroredApplication(
+                            final CachingServiceReference<Application> sr) {
+                        errored.add(sr);
+                    }
+
+                    @Override
+                    public void removeErroredApplication(
+                            final CachingServiceReference<Application> sr) {
+                        errored.remove(sr);
+                    }
+                };
+        final CxfJaxrsServiceRegistrator registrator =
+                new CxfJaxrsServiceRegistrator(
+                        bus, application, emptyMap(), runtime);
+
+        registrator.enable(tasks::add);
+        tasks.get(0).run();
+
+        assertTrue(registrator.getDeployment().isCompletedExceptionally());
+        assertEquals(
+                singletonList(application.getCachingServiceReference()),
+                errored);
+
+        registrator.close();
+        assertTrue(errored.isEmpty());
+        bus.shutdown(false);
+    }
+
+    @Test
+    public void closeSkipsPendingDeployment() {
+        final ExtensionManagerBus bus = new ExtensionManagerBus();
+        final List<Runnable> tasks = new ArrayList<>();
+        final CxfJaxrsServiceRegistrator registrator =
+                new CxfJaxrsServiceRegistrator(bus, null, emptyMap(), null);
+
+        registrator.enable(tasks::add);
+        registrator.close();
+        assertTrue(registrator.getDeployment().isCancelled());
+
+        tasks.get(0).run();
+        assertEquals(Bus.BusState.INITIAL, bus.getState());
+    }
+
+    @Test
+    public void extensionInstancesSurviveRewires() {
+        final Bus bus = BusFactory.newInstance().createBus();
+        try {
+            final List<Object> released = new ArrayList<>();
+            final ServiceTuple<Object> extension =
+                    extension(emptyMap(), released);
+            final CxfJaxrsServiceRegistrator registrator =
+                    new CxfJaxrsServiceRegistrator(
+                            bus, application(), emptyMap(), null);
+            registrator.addProvider(extension);
+            registrator.enable();
+
+            final Object instance = extension.getService();
+            registrator.rewire();
+            registrator.rewire();
+
+            assertSame(instance, extension.getService());
+            assertTrue(released.isEmpty());
+
+            registrator.close();
+        } finally {
+            bus.shutdown(false);
+        }
+    }
+
+    @Test
+    public void extensionInstancesAreRenewedOnRewire() {
+        final Bus bus = BusFactory.newInstance().createBus();
+        try {
+            final List<Object> released = new ArrayList<>();
+            final ServiceTuple<Object> extension = extension(
+                    singletonMap(
+                            "org.apache.aries.jax.rs.whiteboard.renew.on.rewire",
+                            true),
+                    released);
+            final CxfJaxrsServiceRegistrator registrator =
+                    new CxfJaxrsServiceRegistrator(
+                            bus, application(), emptyMap(), null);
+            registrator.addProvider(extension);
+            registrator.enable();
+
+            final Object instance = extension.getService();
+            registrator.rewire();
+
+            assertNotSame(instance, extension.getService());
+            // the previous server had no request in flight, so it is gone
+            assertEquals(singletonList(instance), released);
+
+            registrator.close();
+        } finally {
+            bus.shutdown(false);
+        }
+    }
+
+    @Test
+    public void lazyEndpointIsBuiltOnFirstRequest() {
+        final Bus bus = BusFactory.newInstance().createBus();
+        try {
+            final CxfJaxrsServiceRegistrator registrator =
+                    lazyRegistrator(bus, 0, null);
+            registrator.enable();
+            assertFalse(isMaterialized(registrator));
+
+            registrator.beginRequest();
+            assertTrue(isMaterialized(registrator));
+            registrator.endRequest();
+
+            registrator.close();
+        } finally {
+            bus.shutdown(false);
+        }
+    }
+
+    @Test
+    public void idleLazyEndpointIsTornDown() throws Exception {
+        final Bus bus = BusFactory.newInstance().createBus();
+        final ScheduledExecutorService scheduledExecutorService =
+                Executors.newSingleThreadScheduledExecutor();
+        try {
+            final CxfJaxrsServiceRegistrator registrator =
+                    lazyRegistrator(bus, 50, scheduledExecutorService);
+            registrator.enable();
+
+            registrator.beginRequest();
+            registrator.endRequest();
+            assertTrue(isMaterialized(registrator));
+
+            await(() -> !isMaterialized(registrator));
+
+            // the next request builds it again
+            registrator.beginRequest();
+            assertTrue(isMaterialized(registrator));
+            registrator.endRequest();
+
+            registrator.close();
+        } finally {
+            scheduledExecutorService.shutdownNow();
+            bus.shutdown(false);
+        }
+    }
+
+    @Test
+    public void requestInFlightKeepsLazyEndpoint() throws Exception {
+        final Bus bus = BusFactory.newInstance().createBus();
+        final ScheduledExecutorService scheduledExecutorService =
+                Executors.newSingleThreadScheduledExecutor();
+        try {
+            final CxfJaxrsServiceRegistrator registrator =
+                    lazyRegistrator(bus, 50, scheduledExecutorService);
+            registrator.enable();
+
+            registrator.beginRequest();
+
+            // several idle checks run while the request is being served
+            Thread.sleep(300);
+            assertTrue(isMaterialized(registrator));
+
+            registrator.endRequest();
+            await(() -> !isMaterialized(registrator));
+
+            registrator.close();
+        } finally {
+            scheduledExecutorService.shutdownNow();
+            bus.shutdown(false);
+        }
+    }
+
+    @Test
+    public void requestsRacingIdleChecksFindTheEndpoint() throws Exception {
+        final Bus bus = BusFactory.newInstance().createBus();
+        final ScheduledExecutorService scheduledExecutorService =
+                Executors.newSingleThreadScheduledExecutor();
+        final ExecutorService executorService =
+                Executors.newFixedThreadPool(4);
+        try {
+            final CxfJaxrsServiceRegistrator registrator =
+                    lazyRegistrator(bus, 1, scheduledExecutorService);
+            registrator.enable();
+
+            final AtomicInteger missing = new AtomicInteger();
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executorService.submit(() -> {
+                    for (int j = 0; j < 200; j++) {
+                        registrator.beginRequest();
+                        try {
+                            if (!isMaterialized(registrator)) {
+                                missing.incrementAndGet();
+                            }
+                        } finally {
+                            registrator.endRequest();
+                        }
+                        if (j % 10 == 0) {
+                            Thread.sleep(2);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+
+            assertEquals(0, missing.get());
+
+            registrator.close();
+        } finally {
+            executorService.shutdownNow();
+            scheduledExecutorService.shutdownNow();
+            bus.shutdown(false);
+        }
+    }
+
+    @Test
+    public void changesRacingTheDeploymentAreNotLost() throws Exception {
+        final Bus bus = BusFactory.newInstance().createBus();
+        try {
+            final List<Endpoint> endpoints = startedEndpoints(bus);
+            final CxfJaxrsServiceRegistrator registrator =
+                    new CxfJaxrsServiceRegistrator(
+                            bus, application(), emptyMap(), null);
+            final List<Thread> threads = new ArrayList<>();
+            bus.getExtension(ServerLifeCycleManager.class).registerListener(
+                    new ServerLifeCycleListener() {
+                        @Override
+                        public void startServer(final Server server) {
+                            if (threads.isEmpty()) {
+                                // waits for the monitor of the deployment
+                                final Thread thread = new Thread(
+                                        () -> registrator.add(
+                                                new SingletonResourceProvider(
+                                                        new OtherResource())));
+                                threads.add(thread);
+                                thread.start();
+                                while (thread.getState() !=
+                                        Thread.State.BLOCKED) {
+                                    Thread.yield();
+                                }
+                            }
+                        }
+
+                        @Override
+                        public void stopServer(final Server server) {
+                        }
+                    });
+            registrator.enable();
+            threads.get(0).join(TimeUnit.SECONDS.toMillis(10));
+
+            assertEquals(2, endpoints.size());
+            assertEquals(
+                    new HashSet<>(asList(MyResource.class, OtherResource.class)),
+                    applicationClasses(endpoints.get(1)));
+
+            registrator.close();
+        } finally {
+            bus.shutdown(false);
+        }
+    }
+
+    @Test
+    public void drainingServersKeepTheirApplicationClasses() {
+        final Bus bus = BusFactory.newInstance().createBus();
+        try {
+            final List<Endpoint> endpoints = startedEndpoints(bus);
+            final CxfJaxrsServiceRegistrator registrator =
+                    new CxfJaxrsServiceRegistrator(
+                            bus, application(), emptyMap(), null);
+            registrator.enable();
+
+            assertEquals(1, endpoints.size());
+            assertEquals(
+                    singleton(MyResource.class),
+                    applicationClasses(endpoints.get(0)));
+
+            registrator.add(new SingletonResourceProvider(new OtherResource()));
+
+            // requests still draining on the first server resolve the
+            // classes of the first server
+            assertEquals(2, endpoints.size());
+            assertEquals(
+                    singleton(MyResource.class),
+                    applicationClasses(endpoints.get(0)));
+            assertEquals(
+                    new HashSet<>(asList(MyResource.class, OtherResource.class)),
+                    applicationClasses(endpoints.get(1)));
+
+            registrator.close();
+        } finally {
+            bus.shutdown(false);
+        }
+    }
+
+    @Test
+    public void incrementalChangesUpdateApplicationClasses() {
+        final Bus bus = BusFactory.newInstance().createBus();
+        try {
+            final List<Endpoint> endpoints = startedEndpoints(bus);
+            final CxfJaxrsServiceRegistrator registrator =
+                    new CxfJaxrsServiceRegistrator(
+                            bus, application(), emptyMap(),
+                            singletonMap("incremental.rewire", true), null,
+                            () -> null, new DeploymentMetricsImpl(), null);
+            registrator.enable();
+
+            final ApplicationClasses before =
+                    injectApplicationClasses(endpoints.get(0));
+            registrator.add(new SingletonResourceProvider(new OtherResource()));
+            final SingletonResourceProvider resourceProvider =
+                    new SingletonResourceProvider(new ThirdResource());
+            registrator.add(resourceProvider);
+
+            assertEquals(1, endpoints.size());
+            assertEquals(
+                    new HashSet<>(asList(
+                            MyResource.class, OtherResource.class,
+                            ThirdResource.class)),
+                    applicationClasses(endpoints.get(0)));
+            // snapshots already injected do not change
+            assertEquals(singleton(MyResource.class), before.classes());
+
+            registrator.remove(resourceProvider);
+
+            assertEquals(1, endpoints.size());
+            assertEquals(
+                    new HashSet<>(asList(MyResource.class, OtherResource.class)),
+                    applicationClasses(endpoints.get(0)));
+
+            registrator.close();
+        } finally {
+            bus.shutdown(false);
+        }
+    }
+
+    @Test
+    public void deferredRewiresCountTheChangesTheyAbsorb() throws Exception {
+        final Bus bus = BusFactory.newInstance().createBus();
+        final ScheduledExecutorService scheduledExecutorService =
+                Executors.newSingleThreadScheduledExecutor();
+        try {
+            final DeploymentMetricsImpl deploymentMetrics =
+                    new DeploymentMetricsImpl();
+            final CxfJaxrsServiceRegistrator registrator =
+                    new CxfJaxrsServiceRegistrator(
+                            bus, application(), emptyMap(),
+                            singletonMap("rewire.quiet.period", 50L),
+                            scheduledExecutorService, () -> null,
+                            deploymentMetrics, null);
+            registrator.enable();
+
+            registrator.add(new SingletonResourceProvider(new OtherResource()));
+            registrator.add(new SingletonResourceProvider(new ThirdResource()));
+
+            await(() -> counter(
+                    deploymentMetrics, COUNTER_DEBOUNCED_CHANGES) == 2);
+            assertTrue(
+                    counter(deploymentMetrics, COUNTER_DEBOUNCED_REWIRES) >= 1);
+
+            registrator.close();
+        } finally {
+            scheduledExecutorService.shutdownNow();
+            bus.shutdown(false);
+        }
+    }
+
+    private static long counter(
+            final DeploymentMetricsImpl deploymentMetrics,
+            final String counter) {
+        return deploymentMetrics.getApplicationMetricsDTOs()[0].counters.
+                getOrDefault(counter, 0L);
+    }
+
+    private static List<Endpoint> startedEndpoints(final Bus bus) {
+        final List<Endpoint> endpoints = new ArrayList<>();
+        bus.getExtension(ServerLifeCycleManager.class).registerListener(
+                new ServerLifeCycleListener() {
+                    @Override
+                    public void startServer(final Server server) {
+                        endpoints.add(server.getEndpoint());
+                    }
+
+                    @Override
+                    public void stopServer(final Server server) {
+                    }
+                });
+        return endpoints;
+    }
+
+    private static Set<Class<?>> applicationClasses(final Endpoint endpoint) {
+        return injectApplicationClasses(endpoint).classes();
+    }
+
+    private static ApplicationClasses injectApplicationClasses(
+            final Endpoint endpoint) {
+        final ServerProviderFactory serverProviderFactory =
+                (ServerProviderFactory) endpoint.get(
+                        ServerProviderFactory.class.getName());
+        final MessageImpl message = new MessageImpl();
+        return serverProviderFactory.<ApplicationClasses>createContextProvider(
+                ApplicationClasses.class, message).createContext(message);
+    }
+
+    private static CxfJaxrsServiceRegistrator lazyRegistrator(
+            final Bus bus, final long idleTimeout,
+            final ScheduledExecutorService scheduledExecutorService) {
+        final Map<String, Object> configuration = new HashMap<>();
+        configuration.put("lazy.deployment", true);
+        configuration.put("idle.timeout", idleTimeout);
+        return new CxfJaxrsServiceRegistrator(
+                bus, application(), emptyMap(), configuration,
+                scheduledExecutorService, () -> null,
+                new DeploymentMetricsImpl(), null);
+    }
+
+    private static boolean isMaterialized(
+            final CxfJaxrsServiceRegistrator registrator) {
+        return registrator.getStaticResourceClasses().iterator().hasNext();
+    }
+
+    private static void await(final BooleanSupplier condition)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    private static ServiceTuple<Application> application() {
+        final Application application = new Application() {
+            private final Set<Object> singletons = singleton(new MyResource());
+
+            @Override
+            public Set<Object> getSingletons() {
+                return singletons;
+            }
+        };
+        return ServiceTuples.serviceTuple(
+                emptyMap(), () -> application, new ArrayList<>());
+    }
+
+    private static ServiceTuple<Object> extension(
+            final Map<String, ?> properties, final List<Object> released) {
+        final Map<String, Object> map = new HashMap<>(properties);
+        map.put("objectClass",
+                new String[] {ContainerRequestFilter.class.getName()});
+        return ServiceTuples.serviceTuple(map, MyFilter::new, released);
+    }
+
+    public static class MyFilter implements ContainerRequestFilter {
+        @Override
+        public void filter(final ContainerRequestContext requestContext) {
+        }
+    }
+
     @ApplicationPath("foo")
     public static class MyApp extends Application {}
 
@@ -72,6 +663,22 @@ public class CxfJaxrsServiceRegistratorTest {
         }
     }
 
+    @Path("other")
+    public static class OtherResource {
+        @GET
+        public String get() {
+            return "";
+        }
+    }
+
+    @Path("third")
+    public static class ThirdResource {
+        @GET
+        public String get() {
+            return "";
+        }
+    }
+
     public static class MyResource$$Proxy extends MyResource {
     }
 }
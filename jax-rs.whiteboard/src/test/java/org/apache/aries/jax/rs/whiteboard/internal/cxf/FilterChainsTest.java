@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.jaxrs.utils.ResourceUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.NameBinding;
+import javax.ws.rs.Path;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.cxf.jaxrs.provider.ProviderFactory.DEFAULT_FILTER_NAME_BINDING;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FilterChainsTest {
+
+    @BeforeEach
+    public void setUp() {
+        bus = BusFactory.newInstance().createBus();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        bus.shutdown(false);
+    }
+
+    @Test
+    public void nameBoundFiltersApplyToBoundMethods() {
+        Filter global = new Filter();
+        Filter secured = new Filter();
+        Filter late = new Filter();
+
+        FilterChains filterChains = new FilterChains(
+            bus, Arrays.asList(
+                providerInfo(global, DEFAULT_FILTER_NAME_BINDING, 1000, 1),
+                providerInfo(secured, Secured.class.getName(), 1000, 0),
+                providerInfo(late, DEFAULT_FILTER_NAME_BINDING, 2000, 2)));
+
+        ClassResourceInfo classResourceInfo =
+            ResourceUtils.createClassResourceInfo(
+                Resource.class, Resource.class, true, true, bus);
+
+        filterChains.index(Collections.singleton(classResourceInfo));
+
+        OperationResourceInfo open = getOperationResourceInfo(
+            classResourceInfo, "open");
+        OperationResourceInfo closed = getOperationResourceInfo(
+            classResourceInfo, "closed");
+
+        assertEquals(
+            Arrays.asList(global, late),
+            filterChains.getFilters(ContainerRequestFilter.class, open));
+        assertEquals(
+            Arrays.asList(secured, global, late),
+            filterChains.getFilters(ContainerRequestFilter.class, closed));
+        assertEquals(
+            Arrays.asList(late, secured, global),
+            filterChains.getFilters(ContainerResponseFilter.class, closed));
+        assertEquals(
+            Arrays.asList(global, late),
+            filterChains.getFilters(ContainerRequestFilter.class, null));
+    }
+
+    @Test
+    public void oneChainPerPriority() {
+        FilterChains filterChains = new FilterChains(
+            bus, Arrays.asList(
+                providerInfo(
+                    new Filter(), DEFAULT_FILTER_NAME_BINDING, 1000, 0),
+                providerInfo(new Filter(), Secured.class.getName(), 1000, 1),
+                providerInfo(
+                    new Filter(), DEFAULT_FILTER_NAME_BINDING, 2000, 2)));
+
+        assertEquals(4, filterChains.getProviderInfos().size());
+    }
+
+    private static OperationResourceInfo getOperationResourceInfo(
+        ClassResourceInfo classResourceInfo, String methodName) {
+
+        for (OperationResourceInfo operationResourceInfo :
+                classResourceInfo.getMethodDispatcher().
+                    getOperationResourceInfos()) {
+
+            if (operationResourceInfo.getMethodToInvoke().getName().equals(
+                    methodName)) {
+
+                return operationResourceInfo;
+            }
+        }
+
+        throw new IllegalArgumentException(methodName);
+    }
+
+    private ServiceReferenceFilterProviderInfo<?> providerInfo(
+        Filter filter, String nameBinding, int priority, int rankOrdinal) {
+
+        Map<Class<?>, Integer> contracts = new HashMap<>();
+
+        contracts.put(ContainerRequestFilter.class, priority);
+        contracts.put(ContainerResponseFilter.class, priority);
+
+        return new ServiceReferenceFilterProviderInfo<>(
+            null, Filter.class, Filter.class, filter, bus,
+            Collections.singleton(nameBinding), false, contracts,
+            rankOrdinal);
+    }
+
+    private Bus bus;
+
+    @NameBinding
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Secured {
+    }
+
+    public static class Filter
+        implements ContainerRequestFilter, ContainerResponseFilter {
+
+        @Override
+        public void filter(ContainerRequestContext requestContext) {
+        }
+
+        @Override
+        public void filter(
+            ContainerRequestContext requestContext,
+            ContainerResponseContext responseContext) {
+        }
+
+    }
+
+    @Path("/")
+    public static class Resource {
+
+        @GET
+        @Path("closed")
+        @Secured
+        public String closed() {
+            return "closed";
+        }
+
+        @GET
+        @Path("open")
+        public String open() {
+            return "open";
+        }
+
+    }
+
+}
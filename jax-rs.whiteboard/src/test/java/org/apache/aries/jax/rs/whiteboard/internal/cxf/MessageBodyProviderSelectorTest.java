@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageBodyProviderSelectorTest {
+
+    @BeforeEach
+    public void setUp() {
+        bus = BusFactory.newInstance().createBus();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        bus.shutdown(false);
+    }
+
+    @Test
+    public void selectionsAreCached() throws IOException {
+        CountingWriter lowWriter = new CountingWriter("low");
+        CountingWriter highWriter = new CountingWriter("high");
+
+        MessageBodyProviderSelector selector = new MessageBodyProviderSelector(
+            bus, Arrays.asList(providerInfo(lowWriter, 1),
+                providerInfo(highWriter, 0)),
+            hits, misses);
+
+        assertTrue(isWriteable(selector, Thing.class, MediaType.TEXT_PLAIN));
+        assertTrue(isWriteable(selector, Thing.class, MediaType.TEXT_PLAIN));
+
+        assertEquals(1, misses.sum());
+        assertEquals(1, hits.sum());
+        assertEquals(1, highWriter._calls);
+        assertEquals(0, lowWriter._calls);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        selector.writeTo(
+            new Thing(), Thing.class, Thing.class, new Annotation[0],
+            MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>(),
+            outputStream);
+
+        assertEquals("high", outputStream.toString());
+    }
+
+    @Test
+    public void negativeSelectionsAreCached() {
+        CountingWriter writer = new CountingWriter("writer");
+
+        MessageBodyProviderSelector selector = new MessageBodyProviderSelector(
+            bus, Collections.singletonList(providerInfo(writer, 0)), hits,
+            misses);
+
+        assertFalse(isWriteable(selector, String.class, MediaType.TEXT_PLAIN));
+        assertFalse(isWriteable(selector, String.class, MediaType.TEXT_PLAIN));
+        assertFalse(
+            isWriteable(selector, Thing.class, MediaType.APPLICATION_JSON));
+
+        assertEquals(2, misses.sum());
+        assertEquals(1, hits.sum());
+        assertEquals(0, writer._calls);
+    }
+
+    @Test
+    public void selectionsAreEvictedOneAtATime() {
+        MessageBodyProviderSelector selector = new MessageBodyProviderSelector(
+            bus, Collections.singletonList(
+                providerInfo(new CountingWriter("writer"), 0)),
+            hits, misses);
+
+        for (int i = 0; i <= 1024; i++) {
+            assertTrue(isWriteable(selector, Thing.class, "text/plain;v=" + i));
+        }
+
+        for (int i = 0; i <= 1024; i++) {
+            assertTrue(isWriteable(selector, Thing.class, "text/plain;v=" + i));
+        }
+
+        // a full cache drops one selection per miss rather than all of them
+        assertTrue(misses.sum() < 1025 + 128, () -> misses.sum() + " misses");
+    }
+
+    @Test
+    public void writingWithoutSelectionFails() {
+        MessageBodyProviderSelector selector = new MessageBodyProviderSelector(
+            bus, Collections.singletonList(
+                providerInfo(new CountingWriter("writer"), 0)),
+            hits, misses);
+
+        assertThrows(
+            InternalServerErrorException.class,
+            () -> selector.writeTo(
+                "", String.class, String.class, new Annotation[0],
+                MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>(),
+                new ByteArrayOutputStream()));
+    }
+
+    private static boolean isWriteable(
+        MessageBodyProviderSelector selector, Class<?> type,
+        String mediaType) {
+
+        return selector.isWriteable(
+            type, type, new Annotation[0], MediaType.valueOf(mediaType));
+    }
+
+    private ServiceReferenceFilterProviderInfo<?> providerInfo(
+        CountingWriter writer, int rankOrdinal) {
+
+        return new ServiceReferenceFilterProviderInfo<>(
+            null, CountingWriter.class, CountingWriter.class, writer, bus,
+            Collections.emptySet(), false,
+            Collections.singletonMap(MessageBodyWriter.class, 5000),
+            rankOrdinal);
+    }
+
+    private Bus bus;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public static class Thing {
+    }
+
+    @Produces(MediaType.TEXT_PLAIN)
+    public static class CountingWriter implements MessageBodyWriter<Thing> {
+
+        public CountingWriter(String name) {
+            _name = name;
+        }
+
+        @Override
+        public boolean isWriteable(
+            Class<?> type, Type genericType, Annotation[] annotations,
+            MediaType mediaType) {
+
+            _calls++;
+
+            return true;
+        }
+
+        @Override
+        public void writeTo(
+                Thing thing, Class<?> type, Type genericType,
+                Annotation[] annotations, MediaType mediaType,
+                MultivaluedMap<String, Object> httpHeaders,
+                OutputStream entityStream)
+            throws IOException {
+
+            entityStream.write(_name.getBytes());
+        }
+
+        private int _calls;
+        private final String _name;
+
+    }
+
+}
@@ -0,0 +1,603 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.apache.aries.jax.rs.whiteboard.AriesJaxrsWhiteboardConstants;
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.continuations.Continuation;
+import org.apache.cxf.continuations.ContinuationProvider;
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.interceptor.ServiceInvokerInterceptor;
+import org.apache.cxf.jaxrs.impl.AsyncResponseImpl;
+import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.jaxrs.provider.ServerProviderFactory;
+import org.apache.cxf.jaxrs.utils.InjectionUtils;
+import org.apache.cxf.jaxrs.utils.ResourceUtils;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageContentsList;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.apache.cxf.phase.PhaseManager;
+import org.apache.cxf.service.model.BindingInfo;
+import org.apache.cxf.service.model.EndpointInfo;
+import org.apache.cxf.transport.http.AbstractHTTPDestination;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.util.function.Function;
+import org.osgi.util.promise.Deferred;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.PromiseFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.sse.SseEventSink;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PromiseAwareJAXRSInvokerTest {
+
+    @BeforeEach
+    public void setUp() {
+        bus = BusFactory.newInstance().createBus();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+        bus.shutdown(false);
+    }
+
+    @Test
+    public void resourceMethodsRunOnTheInvocationExecutor() throws Exception {
+        Resource resource = new Resource();
+
+        Exchange exchange = exchange(resource, "get", true);
+
+        Object result = new PromiseAwareJAXRSInvoker(executor, null).invoke(
+            exchange, resource, Resource.class.getMethod("get"),
+            Collections.emptyList());
+
+        Object future = ((MessageContentsList)result).get(0);
+
+        assertTrue(future instanceof CompletableFuture);
+        assertEquals(
+            "GET", ((CompletableFuture<?>)future).get(10, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), resource._thread);
+    }
+
+    @Test
+    public void relativeLocationsAreResolvedOnTheInvocationExecutor()
+        throws Exception {
+
+        Resource resource = new Resource();
+
+        Exchange exchange = exchange(resource, "created", true);
+
+        Message message = exchange.getInMessage();
+
+        message.put(Message.ENDPOINT_ADDRESS, "http://localhost/app");
+
+        PromiseAwareJAXRSInvoker invoker = new PromiseAwareJAXRSInvoker(
+            executor, null);
+
+        Method method = Resource.class.getMethod("created");
+
+        CompletableFuture<Object> response = new CompletableFuture<>();
+
+        PhaseInterceptorChain chain = new PhaseInterceptorChain(
+            bus.getExtension(PhaseManager.class).getInPhases());
+
+        chain.add(new ServiceInvokerInterceptor() {
+
+            @Override
+            public void handleMessage(Message message) {
+                Object result = invoker.invoke(
+                    exchange, resource, method, Collections.emptyList());
+
+                // the chain stays on the invoker while the request is
+                // suspended
+                try {
+                    response.complete(
+                        ((CompletableFuture<?>)
+                            ((MessageContentsList)result).get(0)
+                        ).get(10, TimeUnit.SECONDS));
+                }
+                catch (Exception e) {
+                    response.completeExceptionally(e);
+                }
+            }
+
+        });
+
+        message.setInterceptorChain(chain);
+
+        chain.doIntercept(message);
+
+        assertEquals(
+            URI.create("http://localhost/app/items/1"),
+            ((Response)response.get(10, TimeUnit.SECONDS)).getLocation());
+        assertNull(
+            executor.submit(
+                PhaseInterceptorChain::getCurrentMessage
+            ).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failuresCompleteTheResult() throws Exception {
+        Resource resource = new Resource();
+
+        Exchange exchange = exchange(resource, "fail", true);
+
+        Object result = new PromiseAwareJAXRSInvoker(executor, null).invoke(
+            exchange, resource, Resource.class.getMethod("fail"),
+            Collections.emptyList());
+
+        CompletableFuture<?> future =
+            (CompletableFuture<?>)((MessageContentsList)result).get(0);
+
+        ExecutionException executionException = assertThrows(
+            ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+
+        assertTrue(
+            executionException.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void requestsThatCannotSuspendAreInvokedInline() throws Exception {
+        Resource resource = new Resource();
+
+        Exchange exchange = exchange(resource, "get", false);
+
+        Object result = new PromiseAwareJAXRSInvoker(executor, null).invoke(
+            exchange, resource, Resource.class.getMethod("get"),
+            Collections.emptyList());
+
+        assertEquals("GET", ((MessageContentsList)result).get(0));
+        assertSame(Thread.currentThread(), resource._thread);
+    }
+
+    @Test
+    public void promisesFromAnotherClassSpaceResumeTheResponse()
+        throws Exception {
+
+        try (URLClassLoader classLoader = foreignClassLoader()) {
+            Class<?> promiseFactoryClass = classLoader.loadClass(
+                PromiseFactory.class.getName());
+
+            assertNotEquals(PromiseFactory.class, promiseFactoryClass);
+
+            Object promiseFactory = foreignPromiseFactory(promiseFactoryClass);
+
+            PromiseAwareJAXRSInvoker invoker = new PromiseAwareJAXRSInvoker();
+
+            AsyncResponseImpl asyncResponse = invoker.checkFutureResponse(
+                asyncMessage(),
+                promiseFactoryClass.getMethod(
+                    "resolved", Object.class
+                ).invoke(promiseFactory, "value"));
+
+            assertEquals(
+                "value",
+                ((Response)asyncResponse.getResponseObject()).getEntity());
+
+            IllegalStateException failure = new IllegalStateException();
+
+            asyncResponse = invoker.checkFutureResponse(
+                asyncMessage(),
+                promiseFactoryClass.getMethod(
+                    "failed", Throwable.class
+                ).invoke(promiseFactory, failure));
+
+            assertSame(failure, asyncResponse.getResponseObject());
+        }
+    }
+
+    @Test
+    public void unfinishedStagesAreCancelledWhenTheResponseCompletes() {
+        PromiseAwareJAXRSInvoker invoker = new PromiseAwareJAXRSInvoker();
+
+        CompletableFuture<String> unfinished = new CompletableFuture<>();
+
+        invoker.checkFutureResponse(asyncMessage(), unfinished).onComplete();
+
+        assertTrue(unfinished.isCancelled());
+
+        CompletableFuture<String> finished = new CompletableFuture<>();
+
+        AsyncResponseImpl asyncResponse = invoker.checkFutureResponse(
+            asyncMessage(), finished);
+
+        finished.complete("value");
+
+        asyncResponse.onComplete();
+
+        assertFalse(finished.isCancelled());
+    }
+
+    @Test
+    public void disconnectsResolveTheCancellationPromise() throws Exception {
+        Resource resource = new Resource();
+
+        Exchange exchange = exchange(resource, "promise", false);
+
+        PromiseAwareJAXRSInvoker invoker = new PromiseAwareJAXRSInvoker();
+
+        Object result = invoker.invoke(
+            exchange, resource, Resource.class.getMethod("promise"),
+            Collections.emptyList());
+
+        Message message = exchange.getInMessage();
+
+        message.put(
+            ContinuationProvider.class.getName(),
+            asyncMessage().get(ContinuationProvider.class.getName()));
+
+        @SuppressWarnings("unchecked")
+        Promise<Void> cancellation = (Promise<Void>)message.get(
+            AriesJaxrsWhiteboardConstants.CANCELLATION);
+
+        cancellation.onResolve(
+            () -> resource._deferred.fail(new CancellationException()));
+
+        AsyncResponseImpl asyncResponse = invoker.checkFutureResponse(
+            message, ((MessageContentsList)result).get(0));
+
+        assertFalse(cancellation.isDone());
+
+        asyncResponse.onDisconnect();
+
+        assertTrue(cancellation.isDone());
+        assertTrue(
+            resource._deferred.getPromise().getFailure() instanceof
+                CancellationException);
+
+        asyncResponse.onComplete();
+    }
+
+    @Test
+    public void publishersAreWrittenInTheNegotiatedMediaType()
+        throws Exception {
+
+        assertEquals(MediaType.TEXT_PLAIN_TYPE, publisherMediaType(null));
+        assertEquals(
+            MediaType.APPLICATION_JSON_TYPE,
+            publisherMediaType("text/*;q=0.5, application/json"));
+        assertEquals(
+            MediaType.SERVER_SENT_EVENTS_TYPE,
+            publisherMediaType("text/event-stream"));
+    }
+
+    @Test
+    public void publishersOverTheStreamLimitAreRejected() throws Exception {
+        LongAdder rejected = new LongAdder();
+
+        StreamLimit streamLimit = new StreamLimit(1, 1, rejected);
+
+        Resource resource = new Resource();
+
+        Method method = Resource.class.getMethod("publisher");
+
+        PromiseAwareJAXRSInvoker invoker = new PromiseAwareJAXRSInvoker(
+            null, streamLimit);
+
+        invoker.invoke(
+            exchange(resource, "publisher", false), resource, method,
+            Collections.emptyList());
+
+        streamLimit.acquire();
+
+        assertThrows(
+            ServiceUnavailableException.class,
+            () -> invoker.invoke(
+                exchange(resource, "publisher", false), resource, method,
+                Collections.emptyList()));
+        assertEquals(1, rejected.sum());
+    }
+
+    @Test
+    public void streamingResponsesAreMarked() throws Exception {
+        assertFalse(isStreaming("get"));
+        assertTrue(isStreaming("publisher"));
+        assertTrue(isStreaming("events"));
+    }
+
+    private static Message asyncMessage() {
+        Continuation continuation = (Continuation)Proxy.newProxyInstance(
+            PromiseAwareJAXRSInvokerTest.class.getClassLoader(),
+            new Class<?>[]{Continuation.class},
+            new InvocationHandler() {
+
+                @Override
+                public Object invoke(
+                    Object proxy, Method method, Object[] args) {
+
+                    switch (method.getName()) {
+                        case "getObject":
+                            return _object;
+                        case "setObject":
+                            _object = args[0];
+
+                            return null;
+                        default:
+                            return method.getReturnType() == boolean.class ?
+                                false : null;
+                    }
+                }
+
+                private Object _object;
+
+            });
+
+        ContinuationProvider continuationProvider =
+            (ContinuationProvider)Proxy.newProxyInstance(
+                PromiseAwareJAXRSInvokerTest.class.getClassLoader(),
+                new Class<?>[]{ContinuationProvider.class},
+                (proxy, method, args) -> continuation);
+
+        Message message = new MessageImpl();
+        Exchange exchange = new ExchangeImpl();
+
+        message.setExchange(exchange);
+        message.put(
+            ContinuationProvider.class.getName(), continuationProvider);
+
+        exchange.setInMessage(message);
+
+        return message;
+    }
+
+    private static URLClassLoader foreignClassLoader() {
+        return new URLClassLoader(
+            new URL[]{
+                Promise.class.getProtectionDomain().getCodeSource().
+                    getLocation(),
+                Function.class.getProtectionDomain().getCodeSource().
+                    getLocation()},
+            null);
+    }
+
+    private static Object foreignPromiseFactory(Class<?> promiseFactoryClass)
+        throws Exception {
+
+        return promiseFactoryClass.getConstructor(
+            Executor.class
+        ).newInstance(
+            promiseFactoryClass.getMethod("inlineExecutor").invoke(null));
+    }
+
+    private boolean isStreaming(String methodName) throws Exception {
+        Resource resource = new Resource();
+
+        Exchange exchange = exchange(resource, methodName, false);
+
+        AtomicBoolean streaming = new AtomicBoolean();
+
+        exchange.getInMessage().put(
+            AbstractHTTPDestination.HTTP_REQUEST,
+            Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getAttribute")) {
+                        return (Runnable)() -> streaming.set(true);
+                    }
+
+                    throw new UnsupportedOperationException(method.getName());
+                }));
+
+        Method method = null;
+
+        for (Method candidate : Resource.class.getMethods()) {
+            if (candidate.getName().equals(methodName)) {
+                method = candidate;
+            }
+        }
+
+        new PromiseAwareJAXRSInvoker().invoke(
+            exchange, resource, method,
+            Collections.nCopies(method.getParameterCount(), null));
+
+        return streaming.get();
+    }
+
+    private MediaType publisherMediaType(String accept) throws Exception {
+        Resource resource = new Resource();
+
+        Exchange exchange = exchange(resource, "publisher", false);
+
+        exchange.getInMessage().put(Message.ACCEPT_CONTENT_TYPE, accept);
+
+        Object result = new PromiseAwareJAXRSInvoker().invoke(
+            exchange, resource, Resource.class.getMethod("publisher"),
+            Collections.emptyList());
+
+        return ((Response)((MessageContentsList)result).get(0)).getMediaType();
+    }
+
+    private Exchange exchange(
+        Resource resource, String methodName, boolean suspendable) {
+
+        ClassResourceInfo classResourceInfo =
+            ResourceUtils.createClassResourceInfo(
+                Resource.class, Resource.class, true, true, bus);
+
+        classResourceInfo.setResourceProvider(
+            new SingletonResourceProvider(resource));
+
+        InjectionUtils.injectContextProxies(classResourceInfo, resource);
+
+        OperationResourceInfo operationResourceInfo = null;
+
+        for (OperationResourceInfo ori :
+                classResourceInfo.getMethodDispatcher().
+                    getOperationResourceInfos()) {
+
+            if (ori.getMethodToInvoke().getName().equals(methodName)) {
+                operationResourceInfo = ori;
+            }
+        }
+
+        ServerProviderFactory serverProviderFactory =
+            ServerProviderFactory.createInstance(bus);
+
+        EndpointInfo endpointInfo = new EndpointInfo();
+
+        endpointInfo.setBinding(new BindingInfo(null, null));
+
+        Map<String, Object> properties = new HashMap<>();
+
+        properties.put(
+            ServerProviderFactory.class.getName(), serverProviderFactory);
+
+        Endpoint endpoint = (Endpoint)Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[]{Endpoint.class},
+            (proxy, method, args) -> {
+                if (method.getDeclaringClass() == Map.class) {
+                    return method.invoke(properties, args);
+                }
+
+                if (method.getName().equals("getEndpointInfo")) {
+                    return endpointInfo;
+                }
+
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+        Message message = new MessageImpl();
+        Exchange exchange = new ExchangeImpl();
+
+        message.setExchange(exchange);
+        message.put(Message.HTTP_REQUEST_METHOD, "GET");
+
+        if (suspendable) {
+            message.put(
+                ContinuationProvider.class.getName(),
+                Proxy.newProxyInstance(
+                    getClass().getClassLoader(),
+                    new Class<?>[]{ContinuationProvider.class},
+                    (proxy, method, args) -> null));
+        }
+
+        exchange.setInMessage(message);
+        exchange.put(Endpoint.class, endpoint);
+        exchange.put(OperationResourceInfo.class, operationResourceInfo);
+
+        classResourceInfo.injectContexts(
+            resource, operationResourceInfo, message);
+
+        return exchange;
+    }
+
+    private Bus bus;
+    private ExecutorService executor;
+
+    @Path("/")
+    public static class Resource {
+
+        @GET
+        @Path("created")
+        public Response created() {
+            return Response.created(URI.create("items/1")).build();
+        }
+
+        @GET
+        @Path("events")
+        @Produces(MediaType.SERVER_SENT_EVENTS)
+        public void events(@Context SseEventSink sseEventSink) {
+        }
+
+        @GET
+        @Path("fail")
+        public String fail() {
+            throw new IllegalStateException();
+        }
+
+        @GET
+        public String get() {
+            _thread = Thread.currentThread();
+
+            return _request.getMethod();
+        }
+
+        @GET
+        @Path("publisher")
+        @Produces({
+            MediaType.TEXT_PLAIN, MediaType.APPLICATION_JSON,
+            MediaType.SERVER_SENT_EVENTS
+        })
+        public Object publisher() throws ClassNotFoundException {
+            return Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{
+                    Class.forName("java.util.concurrent.Flow$Publisher")},
+                (proxy, method, args) -> null);
+        }
+
+        @GET
+        @Path("promise")
+        public Promise<String> promise() {
+            return _deferred.getPromise();
+        }
+
+        private final Deferred<String> _deferred = new PromiseFactory(
+            PromiseFactory.inlineExecutor()).deferred();
+        @Context
+        private Request _request;
+        private volatile Thread _thread;
+
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.apache.aries.jax.rs.whiteboard.PooledResourceDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.ServiceObjects;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class PrototypeInstancePoolTest {
+
+    @BeforeEach
+    public void setUp() {
+        executor = new ScheduledThreadPoolExecutor(1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void instancesAreReused() {
+        PrototypeInstancePool pool = new PrototypeInstancePool(
+            serviceObjects(), 1, 0, executor);
+
+        Object first = pool.lease();
+        Object second = pool.lease();
+
+        assertNotSame(first, second);
+
+        pool.release(first);
+        pool.release(second);
+
+        assertEquals(1, ungot.size());
+        assertSame(second, ungot.get(0));
+
+        assertSame(first, pool.lease());
+
+        PooledResourceDTO pooledResourceDTO = pool.populateDTO(
+            new PooledResourceDTO());
+
+        assertEquals(2, pooledResourceDTO.createdInstances);
+        assertEquals(0, pooledResourceDTO.idleInstances);
+        assertEquals(1, pooledResourceDTO.leasedInstances);
+        assertEquals(3, pooledResourceDTO.leases);
+        assertEquals(1, pooledResourceDTO.poolSize);
+
+        pool.close();
+
+        pool.release(first);
+
+        assertEquals(2, ungot.size());
+    }
+
+    @Test
+    public void idleInstancesAreEvicted() throws InterruptedException {
+        PrototypeInstancePool pool = new PrototypeInstancePool(
+            serviceObjects(), 2, 60000, executor);
+
+        Object first = pool.lease();
+
+        pool.release(first);
+
+        pool.evictIdle();
+
+        assertEquals(0, ungot.size());
+
+        pool.close();
+
+        assertEquals(1, ungot.size());
+
+        pool = new PrototypeInstancePool(serviceObjects(), 2, 1, executor);
+
+        Object second = pool.lease();
+
+        pool.release(second);
+
+        Thread.sleep(5);
+
+        pool.evictIdle();
+
+        assertEquals(2, ungot.size());
+        assertEquals(
+            1, pool.populateDTO(new PooledResourceDTO()).evictedInstances);
+
+        pool.close();
+    }
+
+    private ServiceObjects<Object> serviceObjects() {
+        @SuppressWarnings("unchecked")
+        ServiceObjects<Object> serviceObjects =
+            (ServiceObjects<Object>)Proxy.newProxyInstance(
+                PrototypeInstancePoolTest.class.getClassLoader(),
+                new Class<?>[]{ServiceObjects.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getService":
+                            return new Object();
+                        case "ungetService":
+                            ungot.add(args[0]);
+
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(
+                                method.getName());
+                    }
+                });
+
+        return serviceObjects;
+    }
+
+    private ScheduledThreadPoolExecutor executor;
+    private final List<Object> ungot = new ArrayList<>();
+
+}
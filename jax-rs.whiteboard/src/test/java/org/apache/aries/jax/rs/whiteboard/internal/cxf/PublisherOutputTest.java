@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.jaxrs.provider.ServerProviderFactory;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PublisherOutputTest {
+
+    @BeforeEach
+    public void setUp() {
+        bus = BusFactory.newInstance().createBus();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        bus.shutdown(false);
+    }
+
+    @Test
+    public void elementsAreWrittenAsAJsonArray() throws Exception {
+        Object publisher = publisher("a", "b", "c");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        output(publisher, MediaType.APPLICATION_JSON_TYPE).write(outputStream);
+
+        assertEquals(
+            "[\"a\",\"b\",\"c\"]",
+            new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList(1L, 1L, 1L, 1L), requests);
+    }
+
+    @Test
+    public void elementsAreWrittenAsServerSentEvents() throws Exception {
+        Object publisher = publisher("a", "b");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        output(
+            publisher, MediaType.SERVER_SENT_EVENTS_TYPE
+        ).write(outputStream);
+
+        assertEquals(
+            "data: \"a\"\n\ndata: \"b\"\n\n",
+            new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void failedWritesCancelTheSubscription() throws Exception {
+        Object publisher = publisher("a", "b", "c");
+
+        OutputStream outputStream = new OutputStream() {
+
+            @Override
+            public void write(int b) throws IOException {
+                if (b == ',') {
+                    throw new IOException();
+                }
+            }
+
+        };
+
+        PublisherOutput output = output(
+            publisher, MediaType.APPLICATION_JSON_TYPE);
+
+        assertThrows(IOException.class, () -> output.write(outputStream));
+        assertEquals(1, cancellations);
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void streamsOverTheLimitAreRejected() throws Exception {
+        LongAdder rejected = new LongAdder();
+
+        StreamLimit streamLimit = new StreamLimit(1, 5, rejected);
+
+        streamLimit.acquire();
+
+        PublisherOutput output = output(
+            publisher("a"), MediaType.APPLICATION_JSON_TYPE, streamLimit);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        ServiceUnavailableException serviceUnavailableException =
+            assertThrows(
+                ServiceUnavailableException.class,
+                () -> output.write(outputStream));
+
+        assertEquals(
+            "5",
+            serviceUnavailableException.getResponse().getHeaderString(
+                HttpHeaders.RETRY_AFTER));
+        assertEquals(1, rejected.sum());
+        assertTrue(requests.isEmpty());
+
+        streamLimit.release();
+
+        output.write(outputStream);
+
+        assertEquals(
+            "[\"a\"]",
+            new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(0, streamLimit.getActive());
+    }
+
+    @Test
+    public void elementsAreWrittenInTheNegotiatedMediaType() throws Exception {
+        Object publisher = publisher("a", "b");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        output(publisher, MediaType.TEXT_PLAIN_TYPE).write(outputStream);
+
+        assertEquals(
+            "ab",
+            new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void idlePublishersAreCancelledWhenTheClientGoesAway()
+        throws Exception {
+
+        Object publisher = publisher();
+
+        idle = true;
+
+        ByteArrayOutputStream heartbeat = new ByteArrayOutputStream();
+
+        OutputStream outputStream = new OutputStream() {
+
+            @Override
+            public void flush() throws IOException {
+                throw new IOException();
+            }
+
+            @Override
+            public void write(int b) {
+                heartbeat.write(b);
+            }
+
+        };
+
+        PublisherOutput output = output(
+            publisher, MediaType.SERVER_SENT_EVENTS_TYPE);
+
+        assertThrows(IOException.class, () -> output.write(outputStream));
+        assertEquals(1, cancellations);
+        assertEquals(
+            ":\n\n",
+            new String(heartbeat.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void onlyPublishersAreAdapted() throws Exception {
+        assertNotSame(
+            PublisherOutput.Adapter.NOT_A_PUBLISHER,
+            PublisherOutput.Adapter.forClass(publisher().getClass()));
+        assertEquals(
+            PublisherOutput.Adapter.NOT_A_PUBLISHER,
+            PublisherOutput.Adapter.forClass(ArrayList.class));
+    }
+
+    private PublisherOutput output(Object publisher, MediaType mediaType) {
+        return output(publisher, mediaType, null);
+    }
+
+    private PublisherOutput output(
+        Object publisher, MediaType mediaType, StreamLimit streamLimit) {
+
+        ServerProviderFactory serverProviderFactory =
+            ServerProviderFactory.createInstance(bus);
+
+        serverProviderFactory.setUserProviders(
+            Arrays.asList(new PlainWriter(), new QuotingWriter()));
+
+        Map<String, Object> properties = new HashMap<>();
+
+        properties.put(
+            ServerProviderFactory.class.getName(), serverProviderFactory);
+
+        Endpoint endpoint = (Endpoint)Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[]{Endpoint.class},
+            (proxy, method, args) ->
+                method.getDeclaringClass().isInstance(properties) ?
+                    method.invoke(properties, args) : null);
+
+        Message message = new MessageImpl();
+        Exchange exchange = new ExchangeImpl();
+
+        message.setExchange(exchange);
+
+        exchange.setInMessage(message);
+        exchange.put(Endpoint.class, endpoint);
+
+        return new PublisherOutput(
+            PublisherOutput.Adapter.forClass(publisher.getClass()), publisher,
+            String.class, new Annotation[0], mediaType,
+            mediaType.equals(MediaType.SERVER_SENT_EVENTS_TYPE) ?
+                MediaType.APPLICATION_JSON_TYPE : mediaType,
+            10, streamLimit, message);
+    }
+
+    /**
+     * A {@code java.util.concurrent.Flow.Publisher} that publishes the
+     * requested elements synchronously, and records the demand it receives.
+     */
+    private Object publisher(String... elements) throws Exception {
+        Class<?> publisherClass = Class.forName(
+            "java.util.concurrent.Flow$Publisher");
+        Class<?> subscriberClass = Class.forName(
+            "java.util.concurrent.Flow$Subscriber");
+        Class<?> subscriptionClass = Class.forName(
+            "java.util.concurrent.Flow$Subscription");
+
+        Method onComplete = subscriberClass.getMethod("onComplete");
+        Method onNext = subscriberClass.getMethod("onNext", Object.class);
+        Method onSubscribe = subscriberClass.getMethod(
+            "onSubscribe", subscriptionClass);
+
+        Iterator<String> iterator = Arrays.asList(elements).iterator();
+
+        return Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[]{publisherClass},
+            (publisher, subscribe, subscribeArgs) -> {
+                Object subscriber = subscribeArgs[0];
+
+                Object subscription = Proxy.newProxyInstance(
+                    getClass().getClassLoader(),
+                    new Class<?>[]{subscriptionClass},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("cancel")) {
+                            cancellations++;
+
+                            return null;
+                        }
+
+                        long n = (Long)args[0];
+
+                        requests.add(n);
+
+                        if (idle) {
+                            return null;
+                        }
+
+                        for (long i = 0; i < n; i++) {
+                            if (!iterator.hasNext()) {
+                                onComplete.invoke(subscriber);
+
+                                break;
+                            }
+
+                            onNext.invoke(subscriber, iterator.next());
+                        }
+
+                        return null;
+                    });
+
+                onSubscribe.invoke(subscriber, subscription);
+
+                return null;
+            });
+    }
+
+    private Bus bus;
+    private int cancellations;
+    private boolean idle;
+    private final List<Long> requests = new ArrayList<>();
+
+    @Produces(MediaType.TEXT_PLAIN)
+    public static class PlainWriter implements MessageBodyWriter<String> {
+
+        @Override
+        public boolean isWriteable(
+            Class<?> type, Type genericType, Annotation[] annotations,
+            MediaType mediaType) {
+
+            return type == String.class;
+        }
+
+        @Override
+        public void writeTo(
+                String s, Class<?> type, Type genericType,
+                Annotation[] annotations, MediaType mediaType,
+                MultivaluedMap<String, Object> httpHeaders,
+                OutputStream entityStream)
+            throws IOException {
+
+            entityStream.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+
+    }
+
+    @Produces(MediaType.APPLICATION_JSON)
+    public static class QuotingWriter implements MessageBodyWriter<String> {
+
+        @Override
+        public boolean isWriteable(
+            Class<?> type, Type genericType, Annotation[] annotations,
+            MediaType mediaType) {
+
+            return type == String.class;
+        }
+
+        @Override
+        public void writeTo(
+                String s, Class<?> type, Type genericType,
+                Annotation[] annotations, MediaType mediaType,
+                MultivaluedMap<String, Object> httpHeaders,
+                OutputStream entityStream)
+            throws IOException {
+
+            entityStream.write(
+                ("\"" + s + "\"").getBytes(StandardCharsets.UTF_8));
+        }
+
+    }
+
+}
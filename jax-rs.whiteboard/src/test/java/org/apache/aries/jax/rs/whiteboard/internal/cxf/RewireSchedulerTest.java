@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RewireSchedulerTest {
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void coalescesBurst() throws Exception {
+        final List<Integer> rewires = new CopyOnWriteArrayList<>();
+        final RewireScheduler scheduler = new RewireScheduler(
+                executor, 100, 10000, rewires::add);
+
+        for (int i = 0; i < 50; i++) {
+            scheduler.schedule();
+        }
+
+        Thread.sleep(500);
+
+        assertEquals(singletonList(50), rewires);
+    }
+
+    @Test
+    public void honoursMaxDelay() throws Exception {
+        final List<Integer> rewires = new CopyOnWriteArrayList<>();
+        final RewireScheduler scheduler = new RewireScheduler(
+                executor, 200, 300, rewires::add);
+
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1000);
+
+        while (System.nanoTime() < end) {
+            scheduler.schedule();
+
+            Thread.sleep(20);
+        }
+
+        scheduler.close();
+
+        assertTrue(rewires.size() >= 2, rewires.toString());
+    }
+
+    @Test
+    public void closeDiscardsPending() throws Exception {
+        final List<Integer> rewires = new CopyOnWriteArrayList<>();
+        final RewireScheduler scheduler = new RewireScheduler(
+                executor, 50, 50, rewires::add);
+
+        scheduler.schedule();
+        scheduler.close();
+
+        Thread.sleep(200);
+
+        assertTrue(rewires.isEmpty());
+    }
+
+    private final ScheduledThreadPoolExecutor executor =
+            new ScheduledThreadPoolExecutor(1);
+
+}
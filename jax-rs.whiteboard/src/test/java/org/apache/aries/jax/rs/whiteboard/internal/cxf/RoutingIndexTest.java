@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.jaxrs.JAXRSServiceImpl;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.utils.ResourceUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class RoutingIndexTest {
+
+    @BeforeEach
+    public void setUp() {
+        bus = BusFactory.newInstance().createBus();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        bus.shutdown(false);
+    }
+
+    @Test
+    public void candidatesShareLiteralPrefix() {
+        JAXRSServiceImpl service = createService(
+            Users.class, UserDetails.class, Orders.class, Any.class);
+
+        RoutingIndex routingIndex = new RoutingIndex(service);
+
+        assertEquals(
+            Arrays.asList(Users.class, UserDetails.class, Any.class),
+            classes(routingIndex.getCandidates("/users/details/1")));
+        assertEquals(
+            Arrays.asList(Users.class, Any.class),
+            classes(routingIndex.getCandidates("/users/1")));
+        assertEquals(
+            Arrays.asList(Users.class, Any.class),
+            classes(routingIndex.getCandidates("/users;v=1/1")));
+        assertEquals(
+            Arrays.asList(Orders.class, Any.class),
+            classes(routingIndex.getCandidates("/orders")));
+        assertEquals(
+            Arrays.asList(Any.class),
+            classes(routingIndex.getCandidates("/unknown")));
+    }
+
+    @Test
+    public void candidatesWithoutCatchAll() {
+        JAXRSServiceImpl service = createService(
+            Users.class, UserDetails.class, Orders.class);
+
+        RoutingIndex routingIndex = new RoutingIndex(service);
+
+        assertEquals(
+            Arrays.asList(Users.class),
+            classes(routingIndex.getCandidates("/users")));
+        assertEquals(
+            Arrays.asList(Users.class, UserDetails.class),
+            classes(routingIndex.getCandidates("/users/details/")));
+        assertSame(service, routingIndex.getService("/unknown"));
+        assertSame(service, routingIndex.getService("/"));
+    }
+
+    @Test
+    public void literalSegments() {
+        assertEquals(
+            Arrays.asList("a", "b"),
+            RoutingIndex.getLiteralSegments("/a/b/{id}/c"));
+        assertEquals(
+            Arrays.asList("a"),
+            RoutingIndex.getLiteralSegments("a/b{id}"));
+        assertEquals(
+            Arrays.asList(), RoutingIndex.getLiteralSegments("/"));
+    }
+
+    private JAXRSServiceImpl createService(Class<?>... classes) {
+        List<ClassResourceInfo> classResourceInfos = new ArrayList<>();
+
+        for (Class<?> clazz : classes) {
+            classResourceInfos.add(
+                ResourceUtils.createClassResourceInfo(
+                    clazz, clazz, true, true, bus));
+        }
+
+        return new JAXRSServiceImpl(classResourceInfos, true);
+    }
+
+    private static List<Class<?>> classes(
+        List<ClassResourceInfo> classResourceInfos) {
+
+        return classResourceInfos.stream().map(
+            ClassResourceInfo::getServiceClass
+        ).collect(
+            Collectors.toList()
+        );
+    }
+
+    private Bus bus;
+
+    @Path("/users")
+    public static class Users {
+
+        @GET
+        public String get() {
+            return "users";
+        }
+
+    }
+
+    @Path("/users/details")
+    public static class UserDetails {
+
+        @GET
+        public String get() {
+            return "details";
+        }
+
+    }
+
+    @Path("/orders")
+    public static class Orders {
+
+        @GET
+        public String get() {
+            return "orders";
+        }
+
+    }
+
+    @Path("/{any}")
+    public static class Any {
+
+        @GET
+        public String get() {
+            return "any";
+        }
+
+    }
+
+}
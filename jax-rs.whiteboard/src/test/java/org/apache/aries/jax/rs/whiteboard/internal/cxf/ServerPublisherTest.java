@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.endpoint.ServerLifeCycleListener;
+import org.apache.cxf.endpoint.ServerLifeCycleManager;
+import org.apache.cxf.endpoint.ServerRegistry;
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.transport.Destination;
+import org.apache.cxf.transport.MessageObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Application;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ServerPublisherTest {
+
+    @BeforeEach
+    public void setUp() {
+        bus = BusFactory.newInstance().createBus();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        bus.shutdown(false);
+    }
+
+    @Test
+    public void swapKeepsDestination() {
+        final ServerPublisher publisher = new ServerPublisher();
+        final Server first = createServer();
+        publisher.publish(first);
+
+        final Destination destination = first.getDestination();
+        assertNotNull(destination.getMessageObserver());
+
+        final AtomicInteger released = new AtomicInteger();
+        publisher.release(singletonList(released::incrementAndGet));
+        assertEquals(0, released.get());
+
+        final Server second = createServer();
+        assertSame(destination, second.getDestination());
+        publisher.publish(second);
+
+        assertEquals(1, released.get());
+        assertNotNull(destination.getMessageObserver());
+        assertSame(destination, second.getDestination());
+
+        final ServerRegistry serverRegistry =
+                bus.getExtension(ServerRegistry.class);
+        assertFalse(serverRegistry.getServers().contains(first));
+        assertTrue(serverRegistry.getServers().contains(second));
+
+        publisher.close();
+        assertNull(destination.getMessageObserver());
+    }
+
+    @Test
+    public void swapWhileRequestsAreInFlight() throws Exception {
+        final Set<Server> destroyed = ConcurrentHashMap.newKeySet();
+        bus.getExtension(ServerLifeCycleManager.class).registerListener(
+                new ServerLifeCycleListener() {
+                    @Override
+                    public void startServer(Server server) {
+                    }
+
+                    @Override
+                    public void stopServer(Server server) {
+                        destroyed.add(server);
+                    }
+                });
+
+        final AtomicInteger served = new AtomicInteger();
+        final List<Throwable> failures = new CopyOnWriteArrayList<>();
+
+        final ServerPublisher publisher = new ServerPublisher();
+        final Server first = createServer(destroyed, served, failures);
+        publisher.publish(first);
+
+        final Destination destination = first.getDestination();
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final ExecutorService executorService =
+                Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(() -> {
+                    while (running.get()) {
+                        // a dispatcher may still hold the observer of a
+                        // generation that has been retired since
+                        final MessageObserver observer =
+                                destination.getMessageObserver();
+                        LockSupport.parkNanos(200_000);
+                        observer.onMessage(new MessageImpl());
+                    }
+                }));
+            }
+
+            for (int i = 0; i < 50; i++) {
+                publisher.publish(createServer(destroyed, served, failures));
+                Thread.sleep(2);
+            }
+
+            running.set(false);
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            running.set(false);
+            executorService.shutdownNow();
+        }
+
+        publisher.close();
+
+        assertTrue(failures.isEmpty(), failures::toString);
+        assertTrue(served.get() > 0);
+    }
+
+    @Test
+    public void releaseWithoutServer() {
+        final AtomicInteger released = new AtomicInteger();
+        new ServerPublisher().release(singletonList(released::incrementAndGet));
+        assertEquals(1, released.get());
+    }
+
+    /**
+     * A server whose requests stop in the first phase, failing if the server
+     * has already been destroyed when they get there.
+     */
+    private Server createServer(
+            final Set<Server> destroyed, final AtomicInteger served,
+            final List<Throwable> failures) {
+        final Server server = createServer();
+        server.getEndpoint().getInInterceptors().add(
+                new AbstractPhaseInterceptor<Message>(Phase.RECEIVE) {
+                    @Override
+                    public void handleMessage(Message message) {
+                        LockSupport.parkNanos(100_000);
+                        if (destroyed.contains(server)) {
+                            failures.add(new IllegalStateException(
+                                    "Request served by destroyed " + server));
+                        }
+                        served.incrementAndGet();
+                        message.getInterceptorChain().abort();
+                    }
+                });
+        return server;
+    }
+
+    private Server createServer() {
+        final JAXRSServerFactoryBean bean = new CxfJaxrsServiceRegistrator(
+                bus, null, emptyMap(), null
+        ).createEndpoint(new Application() {
+            @Override
+            public Set<Object> getSingletons() {
+                return singleton(new MyResource());
+            }
+        }, JAXRSServerFactoryBean.class);
+        bean.setStart(false);
+        return bean.create();
+    }
+
+    private Bus bus;
+
+    @Path("my")
+    public static class MyResource {
+        @GET
+        public String get() {
+            return "";
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.cxf;
+
+import org.apache.aries.component.dsl.CachingServiceReference;
+import org.apache.aries.jax.rs.whiteboard.internal.utils.ServiceTuples;
+import org.apache.cxf.jaxrs.model.ProviderInfo;
+import org.apache.cxf.jaxrs.provider.ProviderFactory.ProviderInfoClassComparator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ServiceReferenceProviderInfoComparatorTest {
+
+    @Test
+    public void ordinalsFollowRankingThenServiceId() {
+        CachingServiceReference<?> unranked = serviceReference(1, null);
+        CachingServiceReference<?> high = serviceReference(2, 10);
+        CachingServiceReference<?> highLater = serviceReference(3, 10);
+        CachingServiceReference<?> low = serviceReference(4, -5);
+
+        Map<CachingServiceReference<?>, Integer> rankOrdinals =
+            ServiceReferenceProviderInfoComparator.getRankOrdinals(
+                Arrays.asList(unranked, low, highLater, high));
+
+        assertEquals(0, (int)rankOrdinals.get(high));
+        assertEquals(1, (int)rankOrdinals.get(highLater));
+        assertEquals(2, (int)rankOrdinals.get(unranked));
+        assertEquals(3, (int)rankOrdinals.get(low));
+    }
+
+    @Test
+    public void providersSortLikeTheirServiceReferences() {
+        Random random = new Random(0);
+
+        List<CachingServiceReference<?>> serviceReferences = new ArrayList<>();
+
+        for (int i = 0; i < 50; i++) {
+            serviceReferences.add(
+                serviceReference(i + 1, random.nextInt(5) - 2));
+        }
+
+        Map<CachingServiceReference<?>, Integer> rankOrdinals =
+            ServiceReferenceProviderInfoComparator.getRankOrdinals(
+                serviceReferences);
+
+        List<ProviderInfo<?>> providerInfos = new ArrayList<>();
+
+        for (CachingServiceReference<?> serviceReference : serviceReferences) {
+            providerInfos.add(
+                new ServiceReferenceFilterProviderInfo<>(
+                    serviceReference, Object.class, Object.class,
+                    new Object(), null, Collections.emptySet(), false,
+                    Collections.emptyMap(),
+                    rankOrdinals.get(serviceReference)));
+        }
+
+        ProviderInfo<?> builtIn = new ProviderInfo<>(new Object(), null, true);
+
+        providerInfos.add(0, builtIn);
+
+        providerInfos.sort(
+            new ServiceReferenceProviderInfoComparator(
+                new ProviderInfoClassComparator(Object.class)));
+
+        List<CachingServiceReference<?>> expected = new ArrayList<>(
+            serviceReferences);
+
+        expected.sort(Collections.reverseOrder());
+
+        assertEquals(
+            expected,
+            providerInfos.subList(0, expected.size()).stream().map(
+                pi -> ((ServiceReferenceFilterProviderInfo<?>)pi).
+                    getServiceReference()
+            ).collect(
+                Collectors.toList()
+            ));
+        assertEquals(builtIn, providerInfos.get(expected.size()));
+    }
+
+    private static CachingServiceReference<?> serviceReference(
+        long serviceId, Integer serviceRanking) {
+
+        Map<String, Object> properties = new HashMap<>();
+
+        properties.put("service.id", serviceId);
+
+        if (serviceRanking != null) {
+            properties.put("service.ranking", serviceRanking);
+        }
+
+        return new CachingServiceReference<>(
+            ServiceTuples.serviceReference(properties));
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.utils;
+
+import org.apache.aries.component.dsl.CachingServiceReference;
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceObjects;
+import org.osgi.framework.ServiceReference;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ServiceTupleTest {
+
+    @Test
+    public void availabilityIsCheckedWhenLeaving() {
+        List<ServiceReference<?>> registered = new ArrayList<>();
+
+        ServiceReference<Object> serviceReference = register(registered);
+
+        ServiceTuple<Object> serviceTuple = serviceTuple(serviceReference);
+
+        assertTrue(serviceTuple.isAvailable());
+
+        serviceTuple.updateAvailability();
+
+        assertTrue(serviceTuple.isAvailable());
+
+        registered.clear();
+
+        assertTrue(serviceTuple.isAvailable());
+
+        serviceTuple.updateAvailability();
+
+        assertFalse(serviceTuple.isAvailable());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServiceReference<Object> register(
+        List<ServiceReference<?>> registered) {
+
+        Map<String, Object> properties = new HashMap<>();
+
+        properties.put("service.id", (long)registered.size() + 1);
+
+        Bundle bundle = (Bundle)Proxy.newProxyInstance(
+            ServiceTupleTest.class.getClassLoader(),
+            new Class<?>[]{Bundle.class},
+            (proxy, method, args) -> {
+                if (method.getName().equals("getRegisteredServices")) {
+                    return registered.toArray(new ServiceReference<?>[0]);
+                }
+
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+        ServiceReference<Object> serviceReference =
+            (ServiceReference<Object>)Proxy.newProxyInstance(
+                ServiceTupleTest.class.getClassLoader(),
+                new Class<?>[]{ServiceReference.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getBundle":
+                            return bundle;
+                        case "getProperty":
+                            return properties.get(args[0]);
+                        case "getPropertyKeys":
+                            return properties.keySet().toArray(new String[0]);
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return properties.toString();
+                        default:
+                            throw new UnsupportedOperationException(
+                                method.getName());
+                    }
+                });
+
+        registered.add(serviceReference);
+
+        return serviceReference;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServiceTuple<Object> serviceTuple(
+        ServiceReference<Object> serviceReference) {
+
+        ServiceObjects<Object> serviceObjects =
+            (ServiceObjects<Object>)Proxy.newProxyInstance(
+                ServiceTupleTest.class.getClassLoader(),
+                new Class<?>[]{ServiceObjects.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getServiceReference")) {
+                        return serviceReference;
+                    }
+
+                    throw new UnsupportedOperationException(method.getName());
+                });
+
+        return new ServiceTuple<>(
+            new CachingServiceReference<>(serviceReference), serviceObjects,
+            new Object());
+    }
+
+}
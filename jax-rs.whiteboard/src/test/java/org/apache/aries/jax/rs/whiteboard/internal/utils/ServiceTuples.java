@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.jax.rs.whiteboard.internal.utils;
+
+import org.apache.aries.component.dsl.CachingServiceReference;
+import org.osgi.framework.ServiceObjects;
+import org.osgi.framework.ServiceReference;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Builds service tuples backed by fake service references, for tests outside
+ * of this package.
+ */
+public class ServiceTuples {
+
+    /**
+     * Returns a tuple whose instances are created by {@code factory}, and
+     * added to {@code released} when they are released.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ServiceTuple<T> serviceTuple(
+        Map<String, ?> properties, Supplier<T> factory, List<T> released) {
+
+        ServiceReference<T> serviceReference = serviceReference(properties);
+
+        ServiceObjects<T> serviceObjects =
+            (ServiceObjects<T>)Proxy.newProxyInstance(
+                ServiceTuples.class.getClassLoader(),
+                new Class<?>[]{ServiceObjects.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getService":
+                            return factory.get();
+                        case "getServiceReference":
+                            return serviceReference;
+                        case "ungetService":
+                            released.add((T)args[0]);
+
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(
+                                method.getName());
+                    }
+                });
+
+        return new ServiceTuple<>(
+            new CachingServiceReference<>(serviceReference), serviceObjects,
+            factory.get());
+    }
+
+    /**
+     * Returns a service reference with {@code properties}, and a
+     * {@code service.id} of its own unless one is given. References compare
+     * by {@code service.ranking} and then by {@code service.id}, like those
+     * of the framework.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ServiceReference<T> serviceReference(
+        Map<String, ?> properties) {
+
+        Map<String, Object> map = new HashMap<>(properties);
+
+        map.putIfAbsent("service.id", _serviceIds.incrementAndGet());
+
+        return (ServiceReference<T>)Proxy.newProxyInstance(
+            ServiceTuples.class.getClassLoader(),
+            new Class<?>[]{ServiceReference.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "compareTo":
+                        return compare(map, (ServiceReference<?>)args[0]);
+                    case "getProperty":
+                        return map.get(args[0]);
+                    case "getPropertyKeys":
+                        return map.keySet().toArray(new String[0]);
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return map.toString();
+                    default:
+                        throw new UnsupportedOperationException(
+                            method.getName());
+                }
+            });
+    }
+
+    private static int compare(
+        Map<String, Object> properties, ServiceReference<?> other) {
+
+        int ranking = ranking(properties.get("service.ranking"));
+        int otherRanking = ranking(other.getProperty("service.ranking"));
+
+        if (ranking != otherRanking) {
+            return Integer.compare(ranking, otherRanking);
+        }
+
+        return Long.compare(
+            (Long)other.getProperty("service.id"),
+            (Long)properties.get("service.id"));
+    }
+
+    private static int ranking(Object serviceRanking) {
+        return serviceRanking instanceof Integer ? (Integer)serviceRanking : 0;
+    }
+
+    private static final AtomicLong _serviceIds = new AtomicLong();
+
+}